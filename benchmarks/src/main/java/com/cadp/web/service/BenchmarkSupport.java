@@ -0,0 +1,101 @@
+package com.cadp.web.service;
+
+import com.cadp.web.dto.JobRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Wiring and data generation shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    static final String POLICY = "bench_policy";
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"
+            .toCharArray();
+
+    private BenchmarkSupport() {
+    }
+
+    static CadpClient stubClient(long latencyMicros, long jitterMicros) {
+        CadpClient client = new CadpClient();
+        client.useEngine(new StubCryptoEngine(latencyMicros, jitterMicros, 0.0));
+        return client;
+    }
+
+    static FileProcessingService service(CadpClient client) {
+        // One job at a time with the whole pool, so threadCount params are granted as asked
+        JobScheduler scheduler = new JobScheduler();
+        ReflectionTestUtils.setField(scheduler, "workerThreads", 64);
+        ReflectionTestUtils.setField(scheduler, "maxConcurrentJobs", 1);
+        scheduler.init();
+
+        FileProcessingService service = new FileProcessingService();
+        ReflectionTestUtils.setField(service, "cadpClient", client);
+        ReflectionTestUtils.setField(service, "jobScheduler", scheduler);
+        return service;
+    }
+
+    static JobRequest request(List<Integer> columns, String delimiter) {
+        JobRequest request = new JobRequest();
+        request.setMode("protect");
+        request.setPolicy(POLICY);
+        request.setColumns(columns);
+        request.setDelimiter(delimiter);
+        return request;
+    }
+
+    /**
+     * Column indices spread evenly across the row, e.g. 2 of 8 -> [0, 4].
+     */
+    static List<Integer> selectColumns(int fieldCount, int selectedColumns) {
+        List<Integer> columns = new ArrayList<>(selectedColumns);
+        int count = Math.min(selectedColumns, fieldCount);
+        for (int i = 0; i < count; i++) {
+            columns.add(i * fieldCount / count);
+        }
+        return columns;
+    }
+
+    static String row(Random random, int fieldCount, int fieldLength, String delimiter) {
+        StringBuilder sb = new StringBuilder(fieldCount * (fieldLength + delimiter.length()));
+        for (int f = 0; f < fieldCount; f++) {
+            if (f > 0) {
+                sb.append(delimiter);
+            }
+            for (int c = 0; c < fieldLength; c++) {
+                sb.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String[] rows(int count, int fieldCount, int fieldLength, String delimiter) {
+        Random random = new Random(42);
+        String[] rows = new String[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = row(random, fieldCount, fieldLength, delimiter);
+        }
+        return rows;
+    }
+
+    static File writeInput(File dir, int lineCount, int fieldCount, int fieldLength, String delimiter)
+            throws IOException {
+        File file = new File(dir, "input_" + lineCount + "_" + fieldCount + "x" + fieldLength + ".csv");
+        Random random = new Random(42);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < lineCount; i++) {
+                writer.write(row(random, fieldCount, fieldLength, delimiter));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
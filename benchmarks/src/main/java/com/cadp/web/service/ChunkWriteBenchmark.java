@@ -0,0 +1,75 @@
+package com.cadp.web.service;
+
+import com.cadp.web.dto.JobStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link FileProcessingService#writeChunkResults} for one 1000-line
+ * chunk that is already transformed, i.e. the writer side only.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkWriteBenchmark {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Param({ "8", "32" })
+    public int fieldCount;
+
+    @Param({ "8", "64" })
+    public int fieldLength;
+
+    private FileProcessingService service;
+    private List<String> chunk;
+    private File dir;
+    private BufferedWriter writer;
+    private JobStatus job;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = BenchmarkSupport.service(BenchmarkSupport.stubClient(0, 0));
+        chunk = Arrays.asList(BenchmarkSupport.rows(CHUNK_SIZE, fieldCount, fieldLength, ","));
+        dir = Files.createTempDirectory("cadp_bench").toFile();
+        writer = new BufferedWriter(new FileWriter(new File(dir, "out.csv")));
+        job = new JobStatus();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void writeChunk() throws IOException {
+        service.writeChunkResults(writer, chunk, job);
+    }
+}
@@ -0,0 +1,103 @@
+package com.cadp.web.service;
+
+import com.cadp.web.dto.JobStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link FileProcessingService#processFileInternal} over a generated
+ * file, against a stub engine with a configurable per-call latency. Reports the
+ * time per file; divide {@link #LINES} by it for rows/sec.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileProcessingBenchmark {
+
+    static final int LINES = 50_000;
+
+    @Param({ "1", "4", "16" })
+    public int threadCount;
+
+    @Param({ "8", "32" })
+    public int fieldCount;
+
+    @Param({ "1", "4" })
+    public int selectedColumns;
+
+    // Simulated KMS round-trip per cell; 0 measures the CPU-bound pipeline only
+    @Param({ "0", "200" })
+    public long latencyMicros;
+
+    // "lines": single reader thread; "ranges": parallel memory-mapped byte ranges
+    @Param({ "lines", "ranges" })
+    public String readMode;
+
+    // "true": in-flight crypto calls tuned by the AIMD limiter, up to threadCount
+    @Param({ "false", "true" })
+    public boolean adaptive;
+
+    private FileProcessingService service;
+    private List<Integer> columns;
+    private File dir;
+    private File input;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = BenchmarkSupport.service(BenchmarkSupport.stubClient(latencyMicros, latencyMicros / 4));
+        ReflectionTestUtils.setField(service, "parallelReadThresholdMb",
+                "ranges".equals(readMode) ? 0L : Long.MAX_VALUE >> 20);
+        ReflectionTestUtils.setField(service, "adaptiveConcurrency", adaptive);
+        columns = BenchmarkSupport.selectColumns(fieldCount, selectedColumns);
+        dir = Files.createTempDirectory("cadp_bench").toFile();
+        input = BenchmarkSupport.writeInput(dir, LINES, fieldCount, 16, ",");
+        output = new File(dir, "output.csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public JobStatus processFile() throws Exception {
+        JobStatus job = new JobStatus();
+        service.processFileInternal(input, output, BenchmarkSupport.request(columns, ","), job, threadCount);
+        return job;
+    }
+
+    @Benchmark
+    public JobStatus processFileNoColumns() throws Exception {
+        // Pure read/split/join/write cost without any crypto calls
+        JobStatus job = new JobStatus();
+        service.processFileInternal(input, output, BenchmarkSupport.request(Collections.emptyList(), ","), job,
+                threadCount);
+        return job;
+    }
+}
@@ -0,0 +1,155 @@
+package com.cadp.web.service;
+
+import com.cadp.web.dto.JobRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of the per-line work in
+ * {@link FileProcessingService#processFileInternal}: split, column loop,
+ * join and the UTF-8 round-trips in {@link CadpClient}, the {@link FieldScanner}
+ * equivalents, plus a whole batched
+ * chunk as Strings and as raw bytes, with a zero-latency stub engine so only CPU and allocation are
+ * measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LineTransformBenchmark {
+
+    private static final int ROW_POOL = 1024;
+
+    @Param({ "8", "32" })
+    public int fieldCount;
+
+    @Param({ "8", "64" })
+    public int fieldLength;
+
+    @Param({ "1", "4" })
+    public int selectedColumns;
+
+    // "," is a single-char fast path in String.split, "|" has to be escaped and goes through the regex engine;
+    // FieldScanner always gets the literal form
+    @Param({ ",", "\\|" })
+    public String delimiter;
+
+    private FileProcessingService service;
+    private CadpClient client;
+    private List<Integer> columns;
+    private String[] rows;
+    private String[][] splitRows;
+    private String[] cells;
+    private List<String> chunk;
+    private LineChunk byteChunk;
+    private JobRequest request;
+    private JobCrypto crypto;
+    private String literal;
+    private int[] columnArray;
+    private int[] starts;
+    private int[] ends;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        client = BenchmarkSupport.stubClient(0, 0);
+        service = BenchmarkSupport.service(client);
+        columns = BenchmarkSupport.selectColumns(fieldCount, selectedColumns);
+        literal = "\\|".equals(delimiter) ? "|" : delimiter;
+        columnArray = FieldScanner.normalizeColumns(columns);
+        starts = new int[columnArray.length];
+        ends = new int[columnArray.length];
+        rows = BenchmarkSupport.rows(ROW_POOL, fieldCount, fieldLength, literal);
+        splitRows = new String[ROW_POOL][];
+        cells = new String[ROW_POOL];
+        for (int i = 0; i < ROW_POOL; i++) {
+            splitRows[i] = rows[i].split(delimiter, -1);
+            cells[i] = splitRows[i][0];
+        }
+        chunk = Arrays.asList(rows).subList(0, 1000);
+        byteChunk = new LineChunk(chunk.size(), 64 * 1024);
+        for (String row : chunk) {
+            byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+            byteChunk.addLine(bytes, 0, bytes.length);
+        }
+        request = BenchmarkSupport.request(columns, literal);
+        crypto = service.openCrypto(request, null, 1);
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (ROW_POOL - 1);
+        return cursor;
+    }
+
+    @Benchmark
+    public String[] split() {
+        return rows[next()].split(delimiter, -1);
+    }
+
+    @Benchmark
+    public List<String> scannerSplit() {
+        return FieldScanner.split(rows[next()], literal);
+    }
+
+    @Benchmark
+    public int locateColumns() {
+        // Offsets of the selected columns only, as the pipeline does per line
+        FieldScanner.locate(rows[next()], literal, columnArray, starts, ends, 0);
+        return ends[columnArray.length - 1];
+    }
+
+    @Benchmark
+    public String join() {
+        return String.join(delimiter, splitRows[next()]);
+    }
+
+    @Benchmark
+    public String utf8RoundTrip() {
+        byte[] bytes = cells[next()].getBytes(StandardCharsets.UTF_8);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String protectCell() throws Exception {
+        return client.protect(cells[next()], BenchmarkSupport.POLICY);
+    }
+
+    @Benchmark
+    public void columnLoop(Blackhole bh) throws Exception {
+        String[] parts = splitRows[next()].clone();
+        for (int columnIndex : columns) {
+            parts[columnIndex] = client.protect(parts[columnIndex], BenchmarkSupport.POLICY);
+        }
+        bh.consume(parts);
+    }
+
+    @Benchmark
+    public List<String> transformChunk() {
+        // One 1000-line chunk per op: split, one protectBatch per column, join
+        return service.transformChunk(chunk, request, crypto);
+    }
+
+    @Benchmark
+    public LineChunk transformByteChunk() {
+        // Same chunk as raw UTF-8 bytes: only target cells are copied, nothing is decoded
+        return service.transformChunk(byteChunk, request, crypto);
+    }
+}
@@ -2,25 +2,28 @@ package com.cadp.web.controller;
 
 import com.cadp.web.service.FileProcessingService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Controller
 public class WebConverterController {
@@ -31,8 +34,11 @@ public class WebConverterController {
     @Autowired
     private FileProcessingService fileProcessingService;
 
-    // Simple in-memory storage for download tokens
-    private static final Map<String, File> fileStore = new ConcurrentHashMap<>();
+    @Autowired
+    private com.cadp.web.service.JobProgressService jobProgressService;
+
+    @Autowired
+    private com.cadp.web.service.BatchService batchService;
 
     @GetMapping("/")
     public String index(Model model) {
@@ -43,9 +49,10 @@ public class WebConverterController {
     @PostMapping("/api/preview")
     public ResponseEntity<com.cadp.web.dto.FilePreview> previewFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "delimiter", defaultValue = ",") String delimiter) {
+            @RequestParam(value = "delimiter", defaultValue = ",") String delimiter,
+            @RequestParam(value = "quoted", defaultValue = "false") boolean quoted) {
         try {
-            return ResponseEntity.ok(fileProcessingService.generatePreview(file, delimiter));
+            return ResponseEntity.ok(fileProcessingService.generatePreview(file, delimiter, quoted));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -72,47 +79,41 @@ public class WebConverterController {
             @RequestParam("policy") String policy,
             @RequestParam(value = "delimiter", defaultValue = ",") String delimiter,
             @RequestParam(value = "skipHeader", defaultValue = "false") boolean skipHeader,
+            @RequestParam(value = "quoted", defaultValue = "false") boolean quoted,
+            // Per-column mode and policy overrides, "column:mode:policy,..."
+            @RequestParam(value = "transforms", required = false) String transforms,
             // Config params
             @RequestParam(value = "confHost", required = false) String confHost,
             @RequestParam(value = "confPort", required = false) String confPort,
             @RequestParam(value = "confToken", required = false) String confToken,
             @RequestParam(value = "confUser", required = false) String confUser,
-            @RequestParam(value = "threadCount", defaultValue = "4") int threadCount) {
+            @RequestParam(value = "threadCount", defaultValue = "4") int threadCount,
+            @RequestParam(value = "priority", defaultValue = "0") int priority,
+            // Per-job value cache, opt-in; protect only uses it with a deterministic policy
+            @RequestParam(value = "cacheSize", defaultValue = "0") int cacheSize,
+            @RequestParam(value = "deterministicPolicy", defaultValue = "false") boolean deterministicPolicy,
+            // gzip result file
+            @RequestParam(value = "compressOutput", defaultValue = "false") boolean compressOutput) {
         try {
-            com.cadp.web.dto.CadpConfig config = null;
-            if (confHost != null && !confHost.isEmpty()) {
-                config = new com.cadp.web.dto.CadpConfig();
-                config.setHost(confHost);
-                config.setPort(confPort);
-                config.setToken(confToken);
-                config.setUserName(confUser);
-            }
+            com.cadp.web.dto.CadpConfig config = buildConfig(confHost, confPort, confToken, confUser);
+            com.cadp.web.dto.JobRequest request = buildRequest(file.getOriginalFilename(), mode, columns, policy,
+                    delimiter, skipHeader, quoted, threadCount, priority, cacheSize, deterministicPolicy,
+                    compressOutput);
+            request.setTransforms(com.cadp.web.service.ColumnTransforms.parse(transforms));
+            com.cadp.web.service.ColumnTransforms.resolve(request); // Rejects invalid overrides
+            // Registered once per connection settings and reused by later jobs
+            com.cadp.web.service.ClientContext context = cadpClient.contextFor(config);
+            request.setClientContext(context);
 
             // Pre-flight check
             String checkPolicy = (config != null && config.getPolicyName() != null && !config.getPolicyName().isEmpty())
                     ? config.getPolicyName()
                     : policy;
-            try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(file.getInputStream()))) {
-                String line = reader.readLine();
-                if (skipHeader && line != null) {
-                    line = reader.readLine();
-                }
-
-                if (line != null && !line.trim().isEmpty() && !columns.isEmpty()) {
-                    String[] parts = line.split(delimiter);
-
-                    int targetCol = columns.get(0);
-                    if (targetCol < parts.length) {
-                        String sampleData = parts[targetCol];
-                        // Perform check based on mode
-                        if ("protect".equalsIgnoreCase(mode)) {
-                            cadpClient.protect(sampleData, checkPolicy);
-                        } else if ("reveal".equalsIgnoreCase(mode)) {
-                            cadpClient.reveal(sampleData, checkPolicy);
-                        }
-                    }
-                }
+            // Parquet values are only read column by column while the job runs
+            boolean parquet = fileProcessingService.isParquet(file);
+            try {
+                preflight(context, request, sampleRecord(parquet ? java.io.InputStream.nullInputStream()
+                        : file.getInputStream(), skipHeader, quoted), checkPolicy);
             } catch (Exception e) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error",
@@ -121,14 +122,92 @@ public class WebConverterController {
             }
 
             // Start Async Job
-            String jobId = fileProcessingService.processFileAsync(file, mode, columns, policy, delimiter, skipHeader,
-                    config, threadCount);
+            String jobId = fileProcessingService.processFileAsync(file, request);
+
+            Map<String, String> response = new HashMap<>();
+            response.put("jobId", jobId);
+            response.put("status", "UPLOADING");
+            return ResponseEntity.ok(response);
+
+        } catch (com.cadp.web.service.InsufficientStorageException e) {
+            return insufficientStorage(e);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            e.printStackTrace();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    // Step 4 (streaming): register the job; the file body follows via PUT /api/stream/{jobId}
+    @PostMapping("/api/stream")
+    public ResponseEntity<Map<String, String>> createStreamingJob(
+            @RequestParam("filename") String filename,
+            @RequestParam("mode") String mode,
+            @RequestParam("columns") List<Integer> columns,
+            @RequestParam("policy") String policy,
+            @RequestParam(value = "delimiter", defaultValue = ",") String delimiter,
+            @RequestParam(value = "skipHeader", defaultValue = "false") boolean skipHeader,
+            @RequestParam(value = "quoted", defaultValue = "false") boolean quoted,
+            @RequestParam(value = "transforms", required = false) String transforms,
+            // First value of a target column (the first one by default), taken from the client-side preview
+            @RequestParam(value = "sampleValue", required = false) String sampleValue,
+            @RequestParam(value = "sampleColumn", required = false) Integer sampleColumn,
+            // Config params
+            @RequestParam(value = "confHost", required = false) String confHost,
+            @RequestParam(value = "confPort", required = false) String confPort,
+            @RequestParam(value = "confToken", required = false) String confToken,
+            @RequestParam(value = "confUser", required = false) String confUser,
+            @RequestParam(value = "threadCount", defaultValue = "4") int threadCount,
+            @RequestParam(value = "priority", defaultValue = "0") int priority,
+            // Per-job value cache, opt-in; protect only uses it with a deterministic policy
+            @RequestParam(value = "cacheSize", defaultValue = "0") int cacheSize,
+            @RequestParam(value = "deterministicPolicy", defaultValue = "false") boolean deterministicPolicy,
+            // gzip result file
+            @RequestParam(value = "compressOutput", defaultValue = "false") boolean compressOutput) {
+        try {
+            com.cadp.web.dto.CadpConfig config = buildConfig(confHost, confPort, confToken, confUser);
+
+            com.cadp.web.dto.JobRequest request = buildRequest(filename, mode, columns, policy, delimiter,
+                    skipHeader, quoted, threadCount, priority, cacheSize, deterministicPolicy,
+                    compressOutput);
+            request.setTransforms(com.cadp.web.service.ColumnTransforms.parse(transforms));
+            List<com.cadp.web.dto.ColumnTransform> resolved = com.cadp.web.service.ColumnTransforms.resolve(request);
+            request.setClientContext(cadpClient.contextFor(config));
+
+            String jobId = fileProcessingService.createStreamingJob(request);
+
+            // Pre-flight check on the sample, under the job's client context and its column's mode and policy
+            int column = sampleColumn != null ? sampleColumn : columns.isEmpty() ? -1 : columns.get(0);
+            com.cadp.web.dto.ColumnTransform target = resolved.stream().filter(t -> t.getColumn() == column)
+                    .findFirst().orElse(null);
+            if (sampleValue != null && !sampleValue.isEmpty() && target != null) {
+                try {
+                    preflight(request.getClientContext(), target.getMode(), sampleValue, target.getPolicy());
+                } catch (Exception e) {
+                    fileProcessingService.cancelStreamingJob(jobId);
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Pre-flight check failed: (" + e.getMessage() + ")");
+                    return ResponseEntity.status(org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(error);
+                }
+            }
 
             Map<String, String> response = new HashMap<>();
             response.put("jobId", jobId);
             response.put("status", "UPLOADING");
             return ResponseEntity.ok(response);
 
+        } catch (com.cadp.web.service.InsufficientStorageException e) {
+            return insufficientStorage(e);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
         } catch (Exception e) {
             e.printStackTrace();
             Map<String, String> error = new HashMap<>();
@@ -137,6 +216,85 @@ public class WebConverterController {
         }
     }
 
+    // Streaming upload body: rows are processed while they arrive, the input is never stored
+    @PutMapping("/api/stream/{jobId}")
+    public ResponseEntity<com.cadp.web.dto.JobStatus> uploadStream(@PathVariable("jobId") String jobId,
+            HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(fileProcessingService.processStream(jobId, request.getInputStream(),
+                    request.getContentLengthLong()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (com.cadp.web.service.InsufficientStorageException e) {
+            // The job status carries the reason
+            return ResponseEntity.status(org.springframework.http.HttpStatus.INSUFFICIENT_STORAGE)
+                    .body(fileProcessingService.getJobStatus(jobId));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    // Batch job over files already on the server: input paths or globs and an output directory, as JSON
+    @PostMapping(value = "/api/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> createBatch(@RequestBody com.cadp.web.dto.BatchRequest batch) {
+        if (!batchService.isEnabled()) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Server-side paths are disabled; set cadp.ingest.allowed-dirs to enable them");
+            return ResponseEntity.status(org.springframework.http.HttpStatus.FORBIDDEN).body(error);
+        }
+        try {
+            List<File> inputs = batchService.resolveInputs(batch.getInputs());
+            File outputDir = batchService.resolveOutputDir(batch.getOutputDir());
+            com.cadp.web.service.ClientContext context = cadpClient.contextFor(batch.getConfig());
+
+            // Pre-flight check on the first text input; the inputs share their layout
+            String checkPolicy = batch.getConfig() != null && batch.getConfig().getPolicyName() != null
+                    && !batch.getConfig().getPolicyName().isEmpty() ? batch.getConfig().getPolicyName()
+                            : batch.getPolicy();
+            for (File input : inputs) {
+                if (fileProcessingService.isParquet(input)) {
+                    continue;
+                }
+                com.cadp.web.dto.JobRequest request = com.cadp.web.service.BatchService.requestFor(batch,
+                        input.getName(), context);
+                com.cadp.web.service.ColumnTransforms.resolve(request); // Rejects invalid overrides
+                try {
+                    preflight(context, request, sampleRecord(new FileInputStream(input), batch.isSkipHeader(),
+                            batch.isQuoted()), checkPolicy);
+                } catch (Exception e) {
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Pre-flight check failed: (" + e.getMessage() + ")");
+                    return ResponseEntity.status(org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(error);
+                }
+                break;
+            }
+
+            return ResponseEntity.ok(batchService.start(batch, inputs, outputDir, context));
+
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            e.printStackTrace();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    // Totals over the batch and every file's job status
+    @GetMapping("/api/batch/{batchId}")
+    public ResponseEntity<com.cadp.web.dto.BatchStatus> getBatch(@PathVariable("batchId") String batchId) {
+        com.cadp.web.dto.BatchStatus status = batchService.getBatch(batchId);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
     @GetMapping("/api/status/{jobId}")
     public ResponseEntity<com.cadp.web.dto.JobStatus> getJobStatus(@PathVariable("jobId") String jobId) {
         com.cadp.web.dto.JobStatus status = fileProcessingService.getJobStatus(jobId);
@@ -146,48 +304,87 @@ public class WebConverterController {
         return ResponseEntity.ok(status);
     }
 
-    // Step 5: Download
-    @GetMapping("/api/download/{token}")
-    public ResponseEntity<InputStreamResource> downloadFile(@PathVariable("token") String token) {
-        try {
-            // Check local store first (legacy), then service store
-            File file = fileStore.get(token);
-            if (file == null) {
-                file = fileProcessingService.getResultFile(token);
-            }
+    // Server-sent progress events: coalesced, rate-limited snapshots until the job ends
+    @GetMapping(value = "/api/status/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.SseEmitter> streamJobStatus(
+            @PathVariable("jobId") String jobId) {
+        org.springframework.web.servlet.mvc.method.annotation.SseEmitter emitter = jobProgressService
+                .subscribe(jobId);
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
 
-            if (file == null || !file.exists()) {
-                return ResponseEntity.notFound().build();
-            }
+    // Jobs cut off by a restart, offered for resume
+    @GetMapping("/api/jobs/interrupted")
+    public ResponseEntity<List<com.cadp.web.dto.JobStatus>> getInterruptedJobs() {
+        return ResponseEntity.ok(fileProcessingService.getInterruptedJobs());
+    }
 
-            InputStreamResource resource = new InputStreamResource(new FileInputStream(file));
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=" + file.getName())
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .contentLength(file.length())
-                    .body(resource);
+    // Resumes under the job's own Key Manager and user; the token is only needed when this server is not registered with it
+    @PostMapping("/api/jobs/{jobId}/resume")
+    public ResponseEntity<?> resumeJob(@PathVariable("jobId") String jobId,
+            @RequestParam(value = "confToken", required = false) String confToken) {
+        if (!fileProcessingService.isInterrupted(jobId)) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(fileProcessingService.resumeJob(jobId, confToken));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
         } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+            e.printStackTrace();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Failed to resume job: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
         }
     }
 
+    @DeleteMapping("/api/jobs/{jobId}")
+    public ResponseEntity<Void> discardJob(@PathVariable("jobId") String jobId) {
+        try {
+            fileProcessingService.discardJob(jobId);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Step 5: Download, resumable with Range requests
+    @GetMapping("/api/download/{token}")
+    public void downloadFile(@PathVariable("token") String token, HttpServletRequest request,
+            HttpServletResponse response) throws java.io.IOException {
+        File file = fileProcessingService.getResultFile(token);
+        if (file == null || !file.exists()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        FileDownload.send(file, request, response);
+    }
+
     // Helper for result preview
     @GetMapping("/api/preview-result/{token}")
     public ResponseEntity<com.cadp.web.dto.FilePreview> previewResult(@PathVariable("token") String token) {
         try {
-            File file = fileStore.get(token);
-            if (file == null) {
-                file = fileProcessingService.getResultFile(token);
-            }
+            File file = fileProcessingService.getResultFile(token);
             if (file == null || !file.exists()) {
                 return ResponseEntity.notFound().build();
             }
 
             com.cadp.web.dto.FilePreview preview = new com.cadp.web.dto.FilePreview();
             preview.setFilename(file.getName());
+            if (fileProcessingService.isParquet(file)) {
+                preview.setRows(fileProcessingService.describeParquet(file));
+                return ResponseEntity.ok(preview);
+            }
             java.util.List<java.util.List<String>> rows = new java.util.ArrayList<>();
 
-            try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(file))) {
+            try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(
+                    com.cadp.web.service.Compression.decompressIfGzip(new FileInputStream(file)),
+                    java.nio.charset.StandardCharsets.UTF_8))) {
                 String line;
                 int count = 0;
                 while ((line = reader.readLine()) != null && count < 8) {
@@ -203,4 +400,93 @@ public class WebConverterController {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    // Job refused because the disk is too full for it
+    private static ResponseEntity<Map<String, String>> insufficientStorage(
+            com.cadp.web.service.InsufficientStorageException e) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        return ResponseEntity.status(org.springframework.http.HttpStatus.INSUFFICIENT_STORAGE).body(error);
+    }
+
+    private com.cadp.web.dto.CadpConfig buildConfig(String confHost, String confPort, String confToken,
+            String confUser) {
+        if (confHost == null || confHost.isEmpty()) {
+            return null;
+        }
+        com.cadp.web.dto.CadpConfig config = new com.cadp.web.dto.CadpConfig();
+        config.setHost(confHost);
+        config.setPort(confPort);
+        config.setToken(confToken);
+        config.setUserName(confUser);
+        return config;
+    }
+
+    private com.cadp.web.dto.JobRequest buildRequest(String filename, String mode, List<Integer> columns,
+            String policy, String delimiter, boolean skipHeader, boolean quoted, int threadCount, int priority,
+            int cacheSize, boolean deterministicPolicy, boolean compressOutput) {
+        com.cadp.web.dto.JobRequest request = new com.cadp.web.dto.JobRequest();
+        request.setFilename(filename);
+        request.setMode(mode);
+        request.setColumns(columns);
+        request.setPolicy(policy);
+        request.setDelimiter(delimiter);
+        request.setSkipHeader(skipHeader);
+        request.setQuoted(quoted);
+        request.setThreadCount(threadCount);
+        request.setPriority(priority);
+        request.setCacheSize(cacheSize);
+        request.setDeterministicPolicy(deterministicPolicy);
+        request.setCompressOutput(compressOutput);
+        return request;
+    }
+
+    // First data record, or null; closes the stream
+    private static String sampleRecord(java.io.InputStream data, boolean skipHeader, boolean quoted)
+            throws java.io.IOException {
+        java.io.Reader in = new java.io.InputStreamReader(com.cadp.web.service.Compression.decompressIfGzip(data),
+                java.nio.charset.StandardCharsets.UTF_8);
+        try (java.io.BufferedReader reader = quoted ? new com.cadp.web.service.CsvRecordReader(in)
+                : new java.io.BufferedReader(in)) {
+            String line = reader.readLine();
+            if (skipHeader && line != null) {
+                line = reader.readLine();
+            }
+            return line == null || line.trim().isEmpty() ? null : line;
+        }
+    }
+
+    // One check per mode and policy the job uses, on that column's value in the sample record;
+    // the configured policy, when given, is checked in place of the job's own
+    private void preflight(com.cadp.web.service.ClientContext context, com.cadp.web.dto.JobRequest request,
+            String record, String checkPolicy) throws Exception {
+        if (record == null) {
+            return;
+        }
+        String delimiter = com.cadp.web.service.FieldScanner.unescape(request.getDelimiter());
+        java.util.Set<String> checked = new java.util.HashSet<>();
+        for (com.cadp.web.dto.ColumnTransform t : com.cadp.web.service.ColumnTransforms.resolve(request)) {
+            String policy = java.util.Objects.equals(t.getPolicy(), request.getPolicy()) ? checkPolicy
+                    : t.getPolicy();
+            if (checked.contains(t.getMode() + ":" + policy)) {
+                continue;
+            }
+            String sampleData = com.cadp.web.service.FieldScanner.field(record, delimiter, request.isQuoted(),
+                    t.getColumn());
+            if (sampleData != null && !sampleData.isEmpty()) {
+                preflight(context, t.getMode(), sampleData, policy);
+                checked.add(t.getMode() + ":" + policy);
+            }
+        }
+    }
+
+    // Fails fast on a wrong policy or unreachable Key Manager before a job is started
+    private void preflight(com.cadp.web.service.ClientContext context, String mode, String sampleData,
+            String policy) throws Exception {
+        if ("protect".equalsIgnoreCase(mode)) {
+            cadpClient.protect(context, sampleData, policy);
+        } else if ("reveal".equalsIgnoreCase(mode)) {
+            cadpClient.reveal(context, sampleData, policy);
+        }
+    }
 }
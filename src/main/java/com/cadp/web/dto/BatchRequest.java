@@ -0,0 +1,154 @@
+package com.cadp.web.dto;
+
+import java.util.List;
+
+/**
+ * JSON body of a batch job over files already on the server: the job
+ * parameters of {@link JobRequest}, applied to every input.
+ */
+public class BatchRequest {
+    private List<String> inputs; // Absolute paths or glob patterns, e.g. /data/in/2024-*/*.csv
+    private String outputDir; // Absolute; created when missing
+    private boolean overwrite; // Replace existing output files instead of refusing the batch
+    private String mode;
+    private List<Integer> columns;
+    private List<ColumnTransform> transforms; // Columns with their own mode or policy, on top of columns
+    private String policy;
+    private String delimiter = ",";
+    private boolean skipHeader;
+    private boolean quoted;
+    private int threadCount = 4;
+    private int priority;
+    private int cacheSize;
+    private boolean deterministicPolicy;
+    private boolean compressOutput;
+    private CadpConfig config; // Optional, the configured Key Manager connection otherwise
+
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    public void setInputs(List<String> inputs) {
+        this.inputs = inputs;
+    }
+
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(String outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public boolean isOverwrite() {
+        return overwrite;
+    }
+
+    public void setOverwrite(boolean overwrite) {
+        this.overwrite = overwrite;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public List<Integer> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<Integer> columns) {
+        this.columns = columns;
+    }
+
+    public List<ColumnTransform> getTransforms() {
+        return transforms;
+    }
+
+    public void setTransforms(List<ColumnTransform> transforms) {
+        this.transforms = transforms;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public boolean isSkipHeader() {
+        return skipHeader;
+    }
+
+    public void setSkipHeader(boolean skipHeader) {
+        this.skipHeader = skipHeader;
+    }
+
+    public boolean isQuoted() {
+        return quoted;
+    }
+
+    public void setQuoted(boolean quoted) {
+        this.quoted = quoted;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public boolean isDeterministicPolicy() {
+        return deterministicPolicy;
+    }
+
+    public void setDeterministicPolicy(boolean deterministicPolicy) {
+        this.deterministicPolicy = deterministicPolicy;
+    }
+
+    public boolean isCompressOutput() {
+        return compressOutput;
+    }
+
+    public void setCompressOutput(boolean compressOutput) {
+        this.compressOutput = compressOutput;
+    }
+
+    public CadpConfig getConfig() {
+        return config;
+    }
+
+    public void setConfig(CadpConfig config) {
+        this.config = config;
+    }
+}
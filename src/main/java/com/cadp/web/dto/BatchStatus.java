@@ -0,0 +1,108 @@
+package com.cadp.web.dto;
+
+import java.util.List;
+
+/**
+ * State of a batch job: totals over its files and each file's own job status.
+ */
+public class BatchStatus {
+    private String batchId;
+    private String status; // PROCESSING until every file has ended, then COMPLETED, or FAILED if any file failed
+    private String outputDir;
+    private String startTime;
+    private int totalFiles;
+    private int completedFiles;
+    private int failedFiles;
+    private long processedLines;
+    private long totalLines; // Of the files whose line count is known so far
+    private long errorCount;
+    private List<JobStatus> files; // Jobs still registered, in input order
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(String outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public String getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(String startTime) {
+        this.startTime = startTime;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public void setTotalFiles(int totalFiles) {
+        this.totalFiles = totalFiles;
+    }
+
+    public int getCompletedFiles() {
+        return completedFiles;
+    }
+
+    public void setCompletedFiles(int completedFiles) {
+        this.completedFiles = completedFiles;
+    }
+
+    public int getFailedFiles() {
+        return failedFiles;
+    }
+
+    public void setFailedFiles(int failedFiles) {
+        this.failedFiles = failedFiles;
+    }
+
+    public long getProcessedLines() {
+        return processedLines;
+    }
+
+    public void setProcessedLines(long processedLines) {
+        this.processedLines = processedLines;
+    }
+
+    public long getTotalLines() {
+        return totalLines;
+    }
+
+    public void setTotalLines(long totalLines) {
+        this.totalLines = totalLines;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(long errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    public List<JobStatus> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<JobStatus> files) {
+        this.files = files;
+    }
+}
@@ -0,0 +1,58 @@
+package com.cadp.web.dto;
+
+/**
+ * What a job does to one column: protect or reveal, under which policy, and
+ * whether that policy is deterministic.
+ */
+public class ColumnTransform {
+    private int column; // 0-based, like JobRequest.columns
+    private String mode; // protect or reveal; empty means the job's mode
+    private String policy; // Empty means the job's policy
+    private boolean deterministic; // Policy gives the same output for the same input; lets protect use the cache
+
+    public ColumnTransform() {
+    }
+
+    public ColumnTransform(int column, String mode, String policy) {
+        this(column, mode, policy, false);
+    }
+
+    public ColumnTransform(int column, String mode, String policy, boolean deterministic) {
+        this.column = column;
+        this.mode = mode;
+        this.policy = policy;
+        this.deterministic = deterministic;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public void setColumn(int column) {
+        this.column = column;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
+}
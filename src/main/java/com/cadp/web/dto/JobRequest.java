@@ -0,0 +1,136 @@
+package com.cadp.web.dto;
+
+import java.util.List;
+
+/**
+ * Processing parameters of a conversion job.
+ */
+public class JobRequest {
+    private String filename;
+    private String mode;
+    private List<Integer> columns;
+    private List<ColumnTransform> transforms; // Columns with their own mode or policy, on top of columns
+    private String policy;
+    private String delimiter = ",";
+    private boolean skipHeader;
+    private boolean quoted; // RFC 4180 quoted fields, possibly spanning lines
+    private int threadCount = 4;
+    private int priority;
+    private int cacheSize; // Max cached values per job, 0 = no cache
+    private boolean deterministicPolicy; // The job's policy protects the same input to the same output
+    private boolean compressOutput; // Write the result as gzip
+    // Key Manager registration the job runs under; not persisted, a resumed job uses the configured one
+    private com.cadp.web.service.ClientContext clientContext;
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public List<Integer> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<Integer> columns) {
+        this.columns = columns;
+    }
+
+    public List<ColumnTransform> getTransforms() {
+        return transforms;
+    }
+
+    public void setTransforms(List<ColumnTransform> transforms) {
+        this.transforms = transforms;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public boolean isSkipHeader() {
+        return skipHeader;
+    }
+
+    public void setSkipHeader(boolean skipHeader) {
+        this.skipHeader = skipHeader;
+    }
+
+    public boolean isQuoted() {
+        return quoted;
+    }
+
+    public void setQuoted(boolean quoted) {
+        this.quoted = quoted;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public boolean isDeterministicPolicy() {
+        return deterministicPolicy;
+    }
+
+    public void setDeterministicPolicy(boolean deterministicPolicy) {
+        this.deterministicPolicy = deterministicPolicy;
+    }
+
+    public boolean isCompressOutput() {
+        return compressOutput;
+    }
+
+    public void setCompressOutput(boolean compressOutput) {
+        this.compressOutput = compressOutput;
+    }
+
+    public com.cadp.web.service.ClientContext getClientContext() {
+        return clientContext;
+    }
+
+    public void setClientContext(com.cadp.web.service.ClientContext clientContext) {
+        this.clientContext = clientContext;
+    }
+}
@@ -1,16 +1,30 @@
 package com.cadp.web.dto;
 
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
 public class JobStatus {
     private String jobId;
-    private String status; // UPLOADING, PROCESSING, COMPLETED, FAILED
-    private long totalLines;
-    private long processedLines;
-    private long errorCount;
+    private volatile String status; // UPLOADING, QUEUED, PROCESSING, PAUSED (crypto engine unavailable), COMPLETED, FAILED, INTERRUPTED (resumable after a restart)
+    private int queuePosition; // 1-based while QUEUED, 0 once started
+    private int threadCount;
+    private volatile long totalLines; // Non-blank lines, header included; set up front when the input was pre-scanned
+    private long totalBytes; // Input size when known, 0 otherwise
+    // Progress counters are added to by pipeline threads without locking the job
+    private final LongAdder processedLines = new LongAdder();
+    private final LongAdder processedBytes = new LongAdder(); // Output bytes written so far
+    private final LongAdder inputBytesRead = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private volatile long cacheHits;
+    private volatile long cacheMisses;
+    private volatile int concurrencyLimit; // In-flight crypto calls the adaptive limiter allows, 0 when off
+    private volatile double latencyMillis; // p99 crypto call latency of the limiter's last window
     private String startTime;
     private String endTime;
     private String duration;
     private String resultToken;
     private String filename;
+    private List<ColumnTransform> transforms; // Mode and policy of every target column
     private String errorMessage;
 
     // Getters and Setters
@@ -30,6 +44,22 @@ public class JobStatus {
         this.status = status;
     }
 
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    public void setQueuePosition(int queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public long getTotalLines() {
         return totalLines;
     }
@@ -38,20 +68,60 @@ public class JobStatus {
         this.totalLines = totalLines;
     }
 
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
     public long getProcessedLines() {
-        return processedLines;
+        return processedLines.sum();
     }
 
+    // Setters of the counters are for initialization and restore; progress goes through the add methods
     public void setProcessedLines(long processedLines) {
-        this.processedLines = processedLines;
+        this.processedLines.reset();
+        this.processedLines.add(processedLines);
+    }
+
+    public void addProcessedLines(long lines) {
+        processedLines.add(lines);
+    }
+
+    public long getProcessedBytes() {
+        return processedBytes.sum();
+    }
+
+    public void setProcessedBytes(long processedBytes) {
+        this.processedBytes.reset();
+        this.processedBytes.add(processedBytes);
+    }
+
+    public void addProcessedBytes(long bytes) {
+        processedBytes.add(bytes);
+    }
+
+    public long getInputBytesRead() {
+        return inputBytesRead.sum();
+    }
+
+    public void addInputBytesRead(long bytes) {
+        inputBytesRead.add(bytes);
     }
 
     public long getErrorCount() {
-        return errorCount;
+        return errorCount.sum();
     }
 
     public void setErrorCount(long errorCount) {
-        this.errorCount = errorCount;
+        this.errorCount.reset();
+        this.errorCount.add(errorCount);
+    }
+
+    public void addErrorCount(long errors) {
+        errorCount.add(errors);
     }
 
     public String getStartTime() {
@@ -86,6 +156,14 @@ public class JobStatus {
         this.resultToken = resultToken;
     }
 
+    public List<ColumnTransform> getTransforms() {
+        return transforms;
+    }
+
+    public void setTransforms(List<ColumnTransform> transforms) {
+        this.transforms = transforms;
+    }
+
     public String getFilename() {
         return filename;
     }
@@ -101,4 +179,42 @@ public class JobStatus {
     public void setErrorMessage(String errorMessage) {
         this.errorMessage = errorMessage;
     }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public void setCacheHits(long cacheHits) {
+        this.cacheHits = cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public void setCacheMisses(long cacheMisses) {
+        this.cacheMisses = cacheMisses;
+    }
+
+    // Share of cell lookups answered by the job's value cache, 0 when caching is off
+    public double getCacheHitRate() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double) cacheHits / lookups;
+    }
+
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public void setConcurrencyLimit(int concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public void setLatencyMillis(double latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
 }
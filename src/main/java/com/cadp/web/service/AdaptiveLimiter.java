@@ -0,0 +1,141 @@
+package com.cadp.web.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD limit on the number of crypto calls a job has in flight, tuned from
+ * the latency and errors it observes instead of a fixed thread count.
+ * <p>
+ * Calls are sampled in windows of at least {@value #MIN_WINDOW} calls. At the
+ * end of each window:
+ * <ul>
+ * <li>any error halves the limit;</li>
+ * <li>a p99 latency above {@value #LATENCY_TOLERANCE} times the no-load
+ * baseline shrinks it by 10%;</li>
+ * <li>otherwise, if the limit was actually reached, it grows by one.</li>
+ * </ul>
+ * The baseline follows the lowest median seen and drifts slowly upwards, so a
+ * Key Manager that becomes permanently slower is not mistaken for overload
+ * forever.
+ * <p>
+ * Callers wait on a {@link Condition} rather than {@code Object.wait}, which
+ * would pin the carrier of a virtual thread in virtual-thread call mode.
+ */
+final class AdaptiveLimiter {
+
+    private static final int MIN_WINDOW = 20;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BASELINE_DRIFT = 0.05;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final int maxLimit;
+    private int limit;
+    private int inFlight;
+
+    private long[] window = new long[MIN_WINDOW];
+    private int samples;
+    private int errors;
+    private boolean saturated;
+
+    private double baselineNanos = -1;
+    private long p99Nanos;
+
+    AdaptiveLimiter(int initialLimit, int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+    }
+
+    /**
+     * Waits until a call may start.
+     */
+    void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= limit) {
+                released.await();
+            }
+            inFlight++;
+            if (inFlight >= limit) {
+                saturated = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a call started with {@link #acquire}. Returns true when the call
+     * closed a window and the limit was re-evaluated.
+     */
+    boolean release(long latencyNanos, boolean success) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (success) {
+                window[samples++] = latencyNanos;
+            } else {
+                errors++;
+            }
+            released.signal();
+
+            if (samples + errors < window.length) {
+                return false;
+            }
+            adjust();
+            samples = 0;
+            errors = 0;
+            saturated = inFlight >= limit;
+            int size = Math.max(MIN_WINDOW, limit * 4);
+            if (size != window.length) {
+                window = new long[size];
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust() {
+        if (samples > 0) {
+            Arrays.sort(window, 0, samples);
+            long p50 = window[samples / 2];
+            p99Nanos = window[Math.min(samples - 1, (int) Math.ceil(samples * 0.99) - 1)];
+            if (baselineNanos < 0 || p50 < baselineNanos) {
+                baselineNanos = p50;
+            } else {
+                baselineNanos += (p50 - baselineNanos) * BASELINE_DRIFT;
+            }
+        }
+
+        if (errors > 0) {
+            limit = Math.max(1, limit / 2);
+        } else if (samples > 0 && p99Nanos > baselineNanos * LATENCY_TOLERANCE) {
+            limit = Math.max(1, (int) (limit * 0.9));
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        released.signalAll();
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // p99 latency of the last complete window
+    double getLatencyMillis() {
+        lock.lock();
+        try {
+            return p99Nanos / 1_000_000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
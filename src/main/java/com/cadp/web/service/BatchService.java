@@ -0,0 +1,327 @@
+package com.cadp.web.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Batch jobs over files that already sit on the server or on a mounted share.
+ * <p>
+ * Input paths and glob patterns are expanded to regular files, and each file
+ * becomes an ordinary job that reads it in place, without an upload copy.
+ * The jobs go through the {@link JobScheduler} like uploads do, so at most
+ * {@code max-concurrent-jobs} files are processed at once on the shared
+ * worker pool and the rest wait in its queue. Inputs and the output
+ * directory must lie under one of {@code cadp.ingest.allowed-dirs}, symbolic
+ * links resolved; with none configured the batch API is off.
+ * <p>
+ * Batches are not persisted: after a restart their files show up as single
+ * interrupted jobs.
+ */
+@Service
+public class BatchService {
+
+    @Autowired
+    private FileProcessingService fileProcessingService;
+
+    // Comma-separated directories the batch API may read from and write to
+    @Value("${cadp.ingest.allowed-dirs:}")
+    private String allowedDirs;
+
+    @Value("${cadp.ingest.max-files:1000}")
+    private int maxFiles;
+
+    private final List<Path> roots = new ArrayList<>();
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private static final class Batch {
+        final String outputDir;
+        final String startTime;
+        final List<String> jobIds;
+
+        Batch(String outputDir, String startTime, List<String> jobIds) {
+            this.outputDir = outputDir;
+            this.startTime = startTime;
+            this.jobIds = jobIds;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String dir : allowedDirs.split(",")) {
+            if (dir.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                roots.add(Paths.get(dir.trim()).toRealPath());
+            } catch (IOException e) {
+                System.err.println("Ignoring ingest directory " + dir.trim() + ": " + e.getMessage());
+            }
+        }
+        if (!roots.isEmpty()) {
+            System.out.println("Server-side batch jobs enabled for " + roots);
+        }
+    }
+
+    public boolean isEnabled() {
+        return !roots.isEmpty();
+    }
+
+    /**
+     * Expands absolute paths and glob patterns ({@code *}, {@code **},
+     * {@code ?}, {@code [..]}, <code>{a,b}</code>) to the regular files they
+     * name, in order and without duplicates. Rejects a pattern that matches
+     * nothing and any file outside the allowed directories with an
+     * {@link IllegalArgumentException}.
+     */
+    public List<File> resolveInputs(List<String> patterns) throws IOException {
+        if (patterns == null || patterns.isEmpty()) {
+            throw new IllegalArgumentException("No input paths given");
+        }
+        Set<Path> files = new LinkedHashSet<>();
+        for (String pattern : patterns) {
+            List<Path> matches = expand(pattern);
+            if (matches.isEmpty()) {
+                throw new IllegalArgumentException("No files match " + pattern);
+            }
+            files.addAll(matches);
+            if (files.size() > maxFiles) {
+                throw new IllegalArgumentException("More than " + maxFiles + " input files in one batch");
+            }
+        }
+        return files.stream().map(Path::toFile).collect(Collectors.toList());
+    }
+
+    /**
+     * The output directory as an absolute real path, created when missing.
+     * Its deepest existing ancestor is resolved and checked first, so a
+     * symbolic link cannot make it create directories outside the allowed
+     * ones.
+     */
+    public File resolveOutputDir(String path) throws IOException {
+        if (path == null || path.trim().isEmpty()) {
+            throw new IllegalArgumentException("No output directory given");
+        }
+        Path dir = absolute(path).normalize();
+        Path existing = dir;
+        while (existing.getParent() != null && !Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) {
+            existing = existing.getParent();
+        }
+        Path missing = existing.relativize(dir);
+        for (Path name : missing) {
+            if (name.toString().equals("..")) {
+                throw new IllegalArgumentException("Not under an allowed directory: " + path);
+            }
+        }
+        // Only the missing tail is created, below the checked real path
+        Path target = allowed(existing).resolve(missing);
+        Files.createDirectories(target);
+        return allowed(target).toFile();
+    }
+
+    /**
+     * Queues one job per input and returns the batch's initial status. Output
+     * files are named like upload results; a batch whose inputs would share
+     * an output name, or whose outputs already exist without
+     * {@code overwrite}, is rejected before any job starts.
+     */
+    public com.cadp.web.dto.BatchStatus start(com.cadp.web.dto.BatchRequest batch, List<File> inputs,
+            File outputDir, ClientContext context) {
+        if (batch.getColumns() == null && batch.getTransforms() == null) {
+            throw new IllegalArgumentException("No columns given");
+        }
+        List<com.cadp.web.dto.JobRequest> requests = new ArrayList<>();
+        List<File> results = new ArrayList<>();
+        Map<File, File> resultInputs = new HashMap<>();
+        for (File input : inputs) {
+            com.cadp.web.dto.JobRequest request = requestFor(batch, input.getName(), context);
+            ColumnTransforms.resolve(request); // Rejects invalid overrides before any job starts
+            File result = FileProcessingService.outputFileFor(outputDir.toPath(), request);
+            File other = resultInputs.put(result, input);
+            if (other != null) {
+                throw new IllegalArgumentException(
+                        "Inputs " + other + " and " + input + " would both be written to " + result.getName());
+            }
+            if (result.exists() && !batch.isOverwrite()) {
+                throw new IllegalArgumentException("Output file already exists: " + result);
+            }
+            if (inputs.contains(result)) {
+                throw new IllegalArgumentException("Output " + result + " would replace an input of the batch");
+            }
+            requests.add(request);
+            results.add(result);
+        }
+
+        pruneExpired();
+        String batchId = UUID.randomUUID().toString();
+        List<String> jobIds = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            jobIds.add(fileProcessingService.processPathAsync(inputs.get(i), results.get(i), requests.get(i))
+                    .getJobId());
+        }
+        String startTime = java.time.LocalDateTime.now()
+                .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        batches.put(batchId, new Batch(outputDir.getPath(), startTime, jobIds));
+        System.out.println("Started batch " + batchId + ": " + inputs.size() + " files to " + outputDir);
+        return getBatch(batchId);
+    }
+
+    /**
+     * Current state of a batch, or {@code null} when it is unknown or all of
+     * its jobs have expired.
+     */
+    public com.cadp.web.dto.BatchStatus getBatch(String batchId) {
+        Batch batch = batches.get(batchId);
+        if (batch == null) {
+            return null;
+        }
+        com.cadp.web.dto.BatchStatus status = new com.cadp.web.dto.BatchStatus();
+        status.setBatchId(batchId);
+        status.setOutputDir(batch.outputDir);
+        status.setStartTime(batch.startTime);
+        status.setTotalFiles(batch.jobIds.size());
+        List<com.cadp.web.dto.JobStatus> files = new ArrayList<>();
+        boolean running = false;
+        for (String jobId : batch.jobIds) {
+            com.cadp.web.dto.JobStatus job = fileProcessingService.getJobStatus(jobId);
+            if (job == null) {
+                continue;
+            }
+            files.add(job);
+            String state = job.getStatus();
+            if ("COMPLETED".equals(state)) {
+                status.setCompletedFiles(status.getCompletedFiles() + 1);
+            } else if ("FAILED".equals(state)) {
+                status.setFailedFiles(status.getFailedFiles() + 1);
+            } else {
+                running = true;
+            }
+            status.setProcessedLines(status.getProcessedLines() + job.getProcessedLines());
+            status.setTotalLines(status.getTotalLines() + job.getTotalLines());
+            status.setErrorCount(status.getErrorCount() + job.getErrorCount());
+        }
+        if (files.isEmpty()) {
+            batches.remove(batchId);
+            return null;
+        }
+        status.setFiles(files);
+        status.setStatus(running ? "PROCESSING" : status.getFailedFiles() > 0 ? "FAILED" : "COMPLETED");
+        return status;
+    }
+
+    // Batches outlive their jobs only until the registry has forgotten all of them
+    private void pruneExpired() {
+        batches.entrySet().removeIf(e -> e.getValue().jobIds.stream()
+                .allMatch(jobId -> fileProcessingService.getJobStatus(jobId) == null));
+    }
+
+    /**
+     * The job parameters of one input file of the batch.
+     */
+    public static com.cadp.web.dto.JobRequest requestFor(com.cadp.web.dto.BatchRequest batch, String filename,
+            ClientContext context) {
+        com.cadp.web.dto.JobRequest request = new com.cadp.web.dto.JobRequest();
+        request.setFilename(filename);
+        request.setMode(batch.getMode());
+        request.setColumns(batch.getColumns() != null ? batch.getColumns() : new ArrayList<>());
+        request.setPolicy(batch.getPolicy());
+        request.setTransforms(batch.getTransforms());
+        request.setDelimiter(batch.getDelimiter());
+        request.setSkipHeader(batch.isSkipHeader());
+        request.setQuoted(batch.isQuoted());
+        request.setThreadCount(batch.getThreadCount());
+        request.setPriority(batch.getPriority());
+        request.setCacheSize(batch.getCacheSize());
+        request.setDeterministicPolicy(batch.isDeterministicPolicy());
+        request.setCompressOutput(batch.isCompressOutput());
+        request.setClientContext(context);
+        return request;
+    }
+
+    // Regular files named by a path or matching a glob, sorted within the pattern
+    private List<Path> expand(String pattern) throws IOException {
+        if (pattern == null || pattern.trim().isEmpty()) {
+            throw new IllegalArgumentException("Empty input path");
+        }
+        Path path = absolute(pattern.trim());
+        int glob = firstGlobElement(path);
+        if (glob < 0) {
+            Path file = allowed(path);
+            if (!Files.isRegularFile(file)) {
+                throw new IllegalArgumentException("Not a regular file: " + pattern);
+            }
+            return java.util.Collections.singletonList(file);
+        }
+
+        // Walk from the last directory before the first wildcard, only as deep as the pattern reaches
+        Path base = glob == 0 ? path.getRoot() : path.getRoot().resolve(path.subpath(0, glob));
+        allowed(base);
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : path.getNameCount() - glob;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path);
+        List<Path> matches = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(base, depth)) {
+            for (Path candidate : (Iterable<Path>) walk.sorted()::iterator) {
+                if (matcher.matches(candidate) && Files.isRegularFile(candidate)) {
+                    matches.add(allowed(candidate));
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static Path absolute(String path) {
+        Path p = Paths.get(path);
+        if (!p.isAbsolute()) {
+            throw new IllegalArgumentException("Paths must be absolute: " + path);
+        }
+        return p;
+    }
+
+    private static int firstGlobElement(Path path) {
+        for (int i = 0; i < path.getNameCount(); i++) {
+            String name = path.getName(i).toString();
+            if (name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0
+                    || name.indexOf('{') >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The real path, if it lies under an allowed directory
+    private Path allowed(Path path) throws IOException {
+        Path real;
+        try {
+            real = path.toRealPath();
+        } catch (NoSuchFileException e) {
+            throw new IllegalArgumentException("No such file or directory: " + path);
+        }
+        for (Path root : roots) {
+            if (real.startsWith(root)) {
+                return real;
+            }
+        }
+        throw new IllegalArgumentException("Not under an allowed directory: " + path);
+    }
+}
@@ -1,15 +1,19 @@
 package com.cadp.web.service;
 
-import com.centralmanagement.CentralManagementProvider;
-import com.centralmanagement.CipherTextData;
-import com.centralmanagement.ClientObserver;
-import com.centralmanagement.RegisterClientParameters;
-import com.centralmanagement.policy.CryptoManager;
 import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import javax.annotation.PostConstruct;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class CadpClient {
@@ -29,20 +33,77 @@ public class CadpClient {
     @Value("${cadp.policy.name:}")
     private String defaultPolicyName;
 
-    private boolean isInitialized = false;
-    private final java.util.concurrent.atomic.AtomicInteger errorCounter = new java.util.concurrent.atomic.AtomicInteger(
-            0);
-    private static final int MAX_ERRORS = 10;
+    // Policies fetched with a probe call at startup, so the first job does not pay for it
+    @Value("${cadp.policy.prefetch:${cadp.policy.name:}}")
+    private String prefetchPolicies;
+
+    // "cadp" talks to the Key Manager, "stub" runs an in-process stand-in
+    @Value("${cadp.engine:cadp}")
+    private String engineType;
+
+    @Value("${cadp.stub.latency-micros:0}")
+    private long stubLatencyMicros;
+
+    @Value("${cadp.stub.jitter-micros:0}")
+    private long stubJitterMicros;
+
+    @Value("${cadp.stub.error-rate:0}")
+    private double stubErrorRate;
+
+    // Attempts per engine call (1 = no retry), with exponential backoff between them
+    @Value("${cadp.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${cadp.retry.initial-backoff-ms:100}")
+    private long retryInitialBackoffMillis;
+
+    @Value("${cadp.retry.max-backoff-ms:5000}")
+    private long retryMaxBackoffMillis;
+
+    // Consecutive failures that open the circuit, and how long it stays open before a probe
+    @Value("${cadp.breaker.failure-threshold:10}")
+    private int breakerFailureThreshold;
+
+    @Value("${cadp.breaker.open-ms:5000}")
+    private long breakerOpenMillis;
+
+    // Replaced by the Spring bean; clients built outside Spring record nowhere
+    @Autowired
+    private PipelineMetrics metrics = PipelineMetrics.noop();
+
+    private CryptoEngine engine;
+
+    private volatile boolean isInitialized = false;
+    private ClientContext defaultContext;
+    // One handle per (host, port, token, user); registrations per (host, port, token), done once each
+    private final Map<ClientContext, ClientContext> contexts = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> registrations = new ConcurrentHashMap<>();
+    // Replaced from the configuration in init(); this default serves clients built outside Spring
+    private CircuitBreaker breaker = new CircuitBreaker(10, 5000);
 
     @PostConstruct
     public void init() {
+        breaker = new CircuitBreaker(breakerFailureThreshold, breakerOpenMillis);
+        metrics.bindCircuitBreaker(breaker);
+        defaultContext = new ClientContext(keyManagerHost, keyManagerPort, registrationToken, defaultUserName);
+        contexts.put(defaultContext, defaultContext);
+        if ("stub".equalsIgnoreCase(engineType)) {
+            engine = new StubCryptoEngine(stubLatencyMicros, stubJitterMicros, stubErrorRate);
+            isInitialized = true;
+            System.out.println("CADP Client initialized with stub engine. Latency: " + stubLatencyMicros
+                    + "us, Jitter: " + stubJitterMicros + "us, Error rate: " + stubErrorRate);
+            prefetchPolicies();
+            return;
+        }
+        engine = new CadpCryptoEngine();
         try {
             if (keyManagerHost != null && !keyManagerHost.isEmpty() && registrationToken != null
                     && !registrationToken.isEmpty()) {
-                registerClient(keyManagerHost, keyManagerPort, registrationToken);
+                register(defaultContext);
                 isInitialized = true;
                 System.out.println(
                         "CADP Client initialized successfully. Host: " + keyManagerHost + ", Port: " + keyManagerPort);
+                prefetchPolicies();
             } else {
                 System.err.println("CADP Client initialization skipped: Missing configuration (Host or Token).");
             }
@@ -52,69 +113,270 @@ public class CadpClient {
         }
     }
 
-    public synchronized void reconfigure(String host, String port, String token, String userName) throws Exception {
-        // Simple re-registration attempt
-        registerClient(host, port, token);
-        this.keyManagerHost = host;
-        this.keyManagerPort = port;
-        this.registrationToken = token;
-        this.defaultUserName = userName;
-        this.isInitialized = true;
+    /**
+     * The context a job runs under: the configured one when {@code config} is
+     * null, otherwise the given connection settings with blank fields taken
+     * from the configuration. A new host, port and token combination is
+     * registered with the Key Manager on first use; later jobs with the same
+     * settings reuse it without a round-trip.
+     * <p>
+     * The SDK holds one process-wide provider and calls are not routed by
+     * context, so only one host, port and token can be in use: a job asking
+     * for another one is rejected with an {@link IllegalArgumentException}
+     * instead of silently running against the registered Key Manager. A
+     * different user on the same connection is fine.
+     */
+    public ClientContext contextFor(com.cadp.web.dto.CadpConfig config) throws Exception {
+        if (config == null) {
+            return getDefaultContext();
+        }
+        ClientContext requested = new ClientContext(orDefault(config.getHost(), keyManagerHost),
+                orDefault(config.getPort(), keyManagerPort), orDefault(config.getToken(), registrationToken),
+                orDefault(config.getUserName(), defaultUserName));
+        ClientContext context = contexts.get(requested);
+        if (context != null && isRegistered(context)) {
+            return context;
+        }
+        register(requested);
+        context = contexts.putIfAbsent(requested, requested);
+        return context != null ? context : requested;
     }
 
-    private void registerClient(String keyManagerHost, String keyManagerPort, String registrationToken)
-            throws Exception {
-        RegisterClientParameters.Builder builder = new RegisterClientParameters.Builder(keyManagerHost,
-                registrationToken.toCharArray());
+    /**
+     * The context to continue a stored job under, from the host, port and
+     * user it was started with. Tokens are never stored: {@code token} is
+     * used when given, otherwise that of the registration this server holds
+     * for the host and port. A job whose Key Manager is not the registered
+     * one is rejected with an {@link IllegalArgumentException} rather than
+     * resumed against another Key Manager or as another user.
+     */
+    public ClientContext contextForResume(com.cadp.web.dto.CadpConfig saved, String token) throws Exception {
+        if (saved == null) {
+            return getDefaultContext();
+        }
+        com.cadp.web.dto.CadpConfig config = new com.cadp.web.dto.CadpConfig();
+        config.setHost(saved.getHost());
+        config.setPort(saved.getPort());
+        config.setUserName(saved.getUserName());
+        config.setToken(token != null && !token.isEmpty() ? token : registeredToken(saved.getHost(), saved.getPort()));
+        if (config.getToken() == null) {
+            throw new IllegalArgumentException("The job was started against Key Manager " + saved.getHost() + ":"
+                    + saved.getPort() + ", which this server is not registered with; resume it with that "
+                    + "connection's registration token");
+        }
+        return contextFor(config);
+    }
 
-        if (keyManagerPort != null && !keyManagerPort.isEmpty()) {
-            try {
-                int port = Integer.parseInt(keyManagerPort);
-                builder.setWebPort(port);
-            } catch (NumberFormatException e) {
-                // Ignore or log
+    // Token of a live registration with the given host and port, or null
+    private String registeredToken(String host, String port) {
+        for (ClientContext context : contexts.keySet()) {
+            if (java.util.Objects.equals(host, context.getHost()) && java.util.Objects.equals(port, context.getPort())
+                    && context.getToken() != null && isRegistered(context)) {
+                return context.getToken();
             }
         }
+        return null;
+    }
 
-        RegisterClientParameters registerClientParams = builder.build();
-        CentralManagementProvider centralManagementProvider = new CentralManagementProvider(registerClientParams);
-        centralManagementProvider.addProvider();
+    public ClientContext getDefaultContext() {
+        return defaultContext;
     }
 
-    public String protect(String plainText, String policyName) throws Exception {
-        if (!isInitialized)
+    private static String orDefault(String value, String fallback) {
+        return value == null || value.isEmpty() ? fallback : value;
+    }
+
+    private void checkRegistered(ClientContext context) {
+        if (!isRegistered(context))
             throw new IllegalStateException("CADP Client not initialized.");
-        if (plainText == null)
-            return null;
+    }
+
+    private boolean isRegistered(ClientContext context) {
+        CompletableFuture<Void> registration = registrations.get(context.registrationKey());
+        return context == defaultContext && isInitialized
+                || registration != null && registration.isDone() && !registration.isCompletedExceptionally();
+    }
 
+    // Registers once per host, port and token; concurrent callers wait for the same attempt
+    private void register(ClientContext context) throws Exception {
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        CompletableFuture<Void> registration;
+        synchronized (registrations) {
+            String active = activeRegistrationKey();
+            if (active != null && !active.equals(context.registrationKey())) {
+                throw new IllegalArgumentException("This server is connected to a different Key Manager than "
+                        + context.getHost() + ":" + context.getPort()
+                        + "; a job cannot use its own host, port or registration token");
+            }
+            registration = registrations.putIfAbsent(context.registrationKey(), mine);
+        }
+        if (registration == null) {
+            registration = mine;
+            try {
+                engine.register(context.getHost(), context.getPort(), context.getToken());
+                System.out.println("Registered with Key Manager " + context.getHost() + ":" + context.getPort());
+                mine.complete(null);
+            } catch (Exception e) {
+                // Forget the failure so the next job tries again
+                registrations.remove(context.registrationKey(), mine);
+                mine.completeExceptionally(e);
+            }
+        }
         try {
-            CipherTextData cipherTextData = CryptoManager.protect(plainText.getBytes(StandardCharsets.UTF_8),
-                    policyName);
-            errorCounter.set(0); // Reset on success
-            return new String(cipherTextData.getCipherText(), StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            handleError(e);
-            throw e;
+            registration.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
         }
     }
 
+    // The connection the engine is registered with, or being registered with; failed attempts are forgotten
+    private String activeRegistrationKey() {
+        if (isInitialized && defaultContext != null) {
+            return defaultContext.registrationKey();
+        }
+        for (String key : registrations.keySet()) {
+            return key;
+        }
+        return null;
+    }
+
+    // Probe calls in the background: the SDK caches the policy on first use
+    private void prefetchPolicies() {
+        if (prefetchPolicies == null || prefetchPolicies.trim().isEmpty()) {
+            return;
+        }
+        Thread warmup = new Thread(() -> {
+            for (String policy : prefetchPolicies.split(",")) {
+                if (policy.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    engine.protect("warmup".getBytes(StandardCharsets.UTF_8), policy.trim());
+                    System.out.println("Prefetched policy " + policy.trim());
+                } catch (Exception e) {
+                    System.err.println("Failed to prefetch policy " + policy.trim() + ": " + e.getMessage());
+                }
+            }
+        }, "cadp-policy-prefetch");
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+
+    /**
+     * Swaps the crypto backend, e.g. to run the pipeline against a
+     * {@link StubCryptoEngine} outside of Spring.
+     */
+    public void useEngine(CryptoEngine engine) {
+        this.engine = engine;
+        if (defaultContext == null) {
+            defaultContext = new ClientContext(keyManagerHost, keyManagerPort, registrationToken, defaultUserName);
+        }
+        this.isInitialized = true;
+    }
+
+    public String getEngineName() {
+        return engine != null ? engine.getName() : engineType;
+    }
+
+    public String protect(String plainText, String policyName) throws Exception {
+        return protect(getDefaultContext(), plainText, policyName);
+    }
+
     public String reveal(String cipherText, String policyName) throws Exception {
-        if (!isInitialized)
-            throw new IllegalStateException("CADP Client not initialized.");
+        return reveal(getDefaultContext(), cipherText, policyName);
+    }
+
+    public String protect(ClientContext context, String plainText, String policyName) throws Exception {
+        if (plainText == null)
+            return null;
+        return new String(protectRaw(context, plainText.getBytes(StandardCharsets.UTF_8), policyName),
+                StandardCharsets.UTF_8);
+    }
+
+    public String reveal(ClientContext context, String cipherText, String policyName) throws Exception {
         if (cipherText == null)
             return null;
+        return new String(revealRaw(context, cipherText.getBytes(StandardCharsets.UTF_8), policyName),
+                StandardCharsets.UTF_8);
+    }
 
-        CipherTextData cipherTextData = new CipherTextData();
-        cipherTextData.setCipherText(cipherText.getBytes(StandardCharsets.UTF_8));
+    /**
+     * Protects all values in one engine call. Elements must not be null. The
+     * batch fails as a whole; callers that need per-value errors should fall
+     * back to {@link #protect} for a failed batch.
+     */
+    public List<String> protectBatch(List<String> plainTexts, String policyName) throws Exception {
+        return decode(protectRawBatch(encode(plainTexts), policyName));
+    }
 
-        try {
-            byte[] revealedData = CryptoManager.reveal(cipherTextData, policyName, defaultUserName);
-            errorCounter.set(0); // Reset on success
-            return new String(revealedData, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            handleError(e);
-            throw e;
+    /**
+     * Reveals all values in one engine call. Same contract as
+     * {@link #protectBatch}.
+     */
+    public List<String> revealBatch(List<String> cipherTexts, String policyName) throws Exception {
+        return decode(revealRawBatch(encode(cipherTexts), policyName));
+    }
+
+    // Raw UTF-8 byte variants, used by the byte-level pipeline to skip the String round-trip.
+    // Calls without a context run under the configured one. The SDK's crypto calls are process-wide
+    // once a provider is registered, so the context only adds the user that reveal runs as.
+
+    public byte[] protectRaw(byte[] plainText, String policyName) throws Exception {
+        return protectRaw(getDefaultContext(), plainText, policyName);
+    }
+
+    public byte[] revealRaw(byte[] cipherText, String policyName) throws Exception {
+        return revealRaw(getDefaultContext(), cipherText, policyName);
+    }
+
+    public List<byte[]> protectRawBatch(List<byte[]> plainTexts, String policyName) throws Exception {
+        return protectRawBatch(getDefaultContext(), plainTexts, policyName);
+    }
+
+    public List<byte[]> revealRawBatch(List<byte[]> cipherTexts, String policyName) throws Exception {
+        return revealRawBatch(getDefaultContext(), cipherTexts, policyName);
+    }
+
+    public byte[] protectRaw(ClientContext context, byte[] plainText, String policyName) throws Exception {
+        checkRegistered(context);
+        return call("protect", policyName, false, 1, () -> engine.protect(plainText, policyName));
+    }
+
+    public byte[] revealRaw(ClientContext context, byte[] cipherText, String policyName) throws Exception {
+        checkRegistered(context);
+        return call("reveal", policyName, false, 1,
+                () -> engine.reveal(cipherText, policyName, context.getUserName()));
+    }
+
+    public List<byte[]> protectRawBatch(ClientContext context, List<byte[]> plainTexts, String policyName)
+            throws Exception {
+        checkRegistered(context);
+        return call("protect", policyName, true, plainTexts.size(),
+                () -> engine.protectBatch(plainTexts, policyName));
+    }
+
+    public List<byte[]> revealRawBatch(ClientContext context, List<byte[]> cipherTexts, String policyName)
+            throws Exception {
+        checkRegistered(context);
+        return call("reveal", policyName, true, cipherTexts.size(),
+                () -> engine.revealBatch(cipherTexts, policyName, context.getUserName()));
+    }
+
+    private static List<byte[]> encode(List<String> values) {
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        for (String value : values) {
+            encoded.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return encoded;
+    }
+
+    private static List<String> decode(List<byte[]> values) {
+        List<String> decoded = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            decoded.add(new String(value, StandardCharsets.UTF_8));
         }
+        return decoded;
     }
 
     // Config Getters for UI
@@ -138,12 +400,53 @@ public class CadpClient {
         return defaultPolicyName;
     }
 
-    private void handleError(Exception e) {
-        int currentErrors = errorCounter.incrementAndGet();
-        System.err.println("Error occurred in CADP operation. Current consecutive errors: " + currentErrors);
-        if (currentErrors >= MAX_ERRORS) {
-            System.err.println("Too many consecutive errors (" + currentErrors + "). Shutting down application...");
-            System.exit(1);
+    public String getCircuitState() {
+        return breaker.getState().name();
+    }
+
+    /**
+     * Runs one engine call through the circuit breaker, retrying failures with
+     * exponential backoff and jitter. A value the engine rejects as invalid
+     * ({@link IllegalArgumentException}) is not retried: the engine answered,
+     * so it also counts as a success for the breaker. Each attempt is timed
+     * in {@link PipelineMetrics}.
+     */
+    private <T> T call(String name, String policyName, boolean batch, int values, Callable<T> operation)
+            throws Exception {
+        int attempts = Math.max(1, retryMaxAttempts);
+        long backoff = Math.max(1, retryInitialBackoffMillis);
+        for (int attempt = 1;; attempt++) {
+            boolean probe = breaker.acquire();
+            long start = System.nanoTime();
+            boolean reported = false;
+            try {
+                T result = operation.call();
+                reported = true;
+                breaker.onSuccess(probe);
+                metrics.recordCryptoCall(name, policyName, batch, values, System.nanoTime() - start, "success");
+                return result;
+            } catch (IllegalArgumentException e) {
+                reported = true;
+                breaker.onSuccess(probe);
+                metrics.recordCryptoCall(name, policyName, batch, values, System.nanoTime() - start, "rejected");
+                throw e;
+            } catch (Exception e) {
+                reported = true;
+                breaker.onFailure(probe);
+                metrics.recordCryptoCall(name, policyName, batch, values, System.nanoTime() - start, "error");
+                if (attempt >= attempts) {
+                    throw e;
+                }
+                metrics.recordRetry(name);
+                System.err.println("Error occurred in CADP operation (attempt " + attempt + " of " + attempts
+                        + "), retrying: " + e.getMessage());
+                Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+                backoff = Math.min(backoff * 2, Math.max(backoff, retryMaxBackoffMillis));
+            } finally {
+                if (!reported) {
+                    breaker.onFailure(probe); // An Error from the engine must still end a half-open probe
+                }
+            }
         }
     }
 }
@@ -0,0 +1,50 @@
+package com.cadp.web.service;
+
+import com.centralmanagement.CentralManagementProvider;
+import com.centralmanagement.CipherTextData;
+import com.centralmanagement.RegisterClientParameters;
+import com.centralmanagement.policy.CryptoManager;
+
+/**
+ * {@link CryptoEngine} backed by the Thales CADP SDK and a live Key Manager.
+ */
+public class CadpCryptoEngine implements CryptoEngine {
+
+    @Override
+    public void register(String keyManagerHost, String keyManagerPort, String registrationToken)
+            throws Exception {
+        RegisterClientParameters.Builder builder = new RegisterClientParameters.Builder(keyManagerHost,
+                registrationToken.toCharArray());
+
+        if (keyManagerPort != null && !keyManagerPort.isEmpty()) {
+            try {
+                int port = Integer.parseInt(keyManagerPort);
+                builder.setWebPort(port);
+            } catch (NumberFormatException e) {
+                // Ignore or log
+            }
+        }
+
+        RegisterClientParameters registerClientParams = builder.build();
+        CentralManagementProvider centralManagementProvider = new CentralManagementProvider(registerClientParams);
+        centralManagementProvider.addProvider();
+    }
+
+    @Override
+    public byte[] protect(byte[] plainText, String policyName) throws Exception {
+        CipherTextData cipherTextData = CryptoManager.protect(plainText, policyName);
+        return cipherTextData.getCipherText();
+    }
+
+    @Override
+    public byte[] reveal(byte[] cipherText, String policyName, String userName) throws Exception {
+        CipherTextData cipherTextData = new CipherTextData();
+        cipherTextData.setCipherText(cipherText);
+        return CryptoManager.reveal(cipherTextData, policyName, userName);
+    }
+
+    @Override
+    public String getName() {
+        return "cadp";
+    }
+}
@@ -0,0 +1,193 @@
+package com.cadp.web.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Bounded, ordered pipeline used by {@link FileProcessingService}: the caller
+ * reads and submits chunks, worker threads parse and transform them, and a
+ * writer task emits the results strictly in submission order. Workers and
+ * writer run on executors owned by the {@link JobScheduler}.
+ * <p>
+ * Every chunk carries a sequence number. Workers finish out of order and the
+ * writer parks early chunks in a reorder buffer until their turn, so one slow
+ * chunk no longer leaves the other workers idle. A semaphore caps the chunks
+ * that are queued, in progress or waiting to be written; once it is exhausted
+ * {@link #submit} blocks, which throttles the reader to the writer's pace.
+ */
+class ChunkPipeline {
+
+    interface ChunkWriter {
+        void write(List<String> results) throws IOException;
+    }
+
+    private static final class Chunk {
+        final long sequence;
+        final List<String> lines;
+        List<String> results;
+
+        Chunk(long sequence, List<String> lines) {
+            this.sequence = sequence;
+            this.lines = lines;
+        }
+    }
+
+    private static final Chunk END_OF_INPUT = new Chunk(-1, null);
+    // Wakes the writer after a failure so it stops without writing the rest
+    private static final Chunk FAILED = new Chunk(-1, null);
+
+    private final Function<List<String>, List<String>> transform;
+    private final ChunkWriter chunkWriter;
+    private final int workerCount;
+    private final Semaphore permits;
+    // Both queues are bounded by the permits, not by their own capacity
+    private final BlockingQueue<Chunk> workQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Chunk> doneQueue = new LinkedBlockingQueue<>();
+    private final List<Future<?>> workers = new ArrayList<>();
+    private final Future<?> writer;
+
+    private volatile Throwable failure;
+    private volatile int reorderDepth;
+    private long nextSequence = 0;
+
+    ChunkPipeline(ExecutorService executor, ExecutorService writerExecutor, int workerCount, int maxInFlight,
+            Function<List<String>, List<String>> transform, ChunkWriter chunkWriter) {
+        this.transform = transform;
+        this.chunkWriter = chunkWriter;
+        this.workerCount = workerCount;
+        this.permits = new Semaphore(Math.max(maxInFlight, workerCount));
+
+        writer = writerExecutor.submit(this::runWriter);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(executor.submit(this::runWorker));
+        }
+    }
+
+    /**
+     * Hands a chunk to the workers, blocking while too many chunks are in flight.
+     */
+    void submit(List<String> lines) throws Exception {
+        while (!permits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+        checkFailure();
+        workQueue.put(new Chunk(nextSequence++, lines));
+    }
+
+    /**
+     * Signals end of input and waits until every submitted chunk is written.
+     */
+    void finish() throws Exception {
+        for (int i = 0; i < workerCount; i++) {
+            workQueue.put(END_OF_INPUT);
+        }
+        doneQueue.put(new Chunk(nextSequence, null));
+        writer.get();
+        checkFailure();
+    }
+
+    /**
+     * Stops the pipeline after a reader-side failure without writing the rest.
+     */
+    void abort(Throwable cause) {
+        fail(cause);
+        for (Future<?> worker : workers) {
+            worker.cancel(true);
+        }
+        try {
+            writer.get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // The writer already recorded its own failure, or is stuck in a write the caller is about to close
+        }
+    }
+
+    int getQueuedChunks() {
+        return workQueue.size();
+    }
+
+    int getPendingWriteChunks() {
+        return doneQueue.size() + reorderDepth;
+    }
+
+    private void runWorker() {
+        try {
+            while (true) {
+                Chunk chunk = workQueue.take();
+                if (chunk == END_OF_INPUT) {
+                    return;
+                }
+                if (failure != null) {
+                    continue; // Drain without work
+                }
+                chunk.results = transform.apply(chunk.lines);
+                doneQueue.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void runWriter() {
+        Map<Long, Chunk> reorderBuffer = new HashMap<>();
+        long nextToWrite = 0;
+        long total = -1;
+        try {
+            while (total < 0 || nextToWrite < total) {
+                Chunk chunk = doneQueue.take();
+                if (chunk == FAILED || failure != null) {
+                    return;
+                }
+                if (chunk.lines == null) {
+                    total = chunk.sequence; // End marker carries the chunk count
+                    continue;
+                }
+                reorderBuffer.put(chunk.sequence, chunk);
+                Chunk ready;
+                while ((ready = reorderBuffer.remove(nextToWrite)) != null) {
+                    chunkWriter.write(ready.results);
+                    nextToWrite++;
+                    permits.release();
+                }
+                reorderDepth = reorderBuffer.size();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+        doneQueue.offer(FAILED);
+    }
+
+    private void checkFailure() throws Exception {
+        Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        throw new RuntimeException(t);
+    }
+}
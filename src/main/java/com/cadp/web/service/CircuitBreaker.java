@@ -0,0 +1,129 @@
+package com.cadp.web.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker in front of the crypto engine, shared by all jobs.
+ * <p>
+ * CLOSED: calls go through; {@code failureThreshold} consecutive failures
+ * open the circuit. OPEN: callers wait instead of failing, so jobs pause
+ * while the Key Manager is unavailable. After {@code openMillis} the circuit
+ * is HALF_OPEN and one probe call is let through: a success closes it, a
+ * failure opens it again. Only the probe moves the circuit out of HALF_OPEN;
+ * calls let through before it opened may still end later, and their results
+ * only touch the failure count.
+ * <p>
+ * Every crypto call of every job passes through here, so while CLOSED a call
+ * only reads the volatile state and resets the failure count when it is not
+ * already zero; the lock is taken for transitions and for waiting. Waiting
+ * uses a {@link Condition} rather than {@code Object.wait}, which would pin
+ * the carrier of a virtual thread.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private volatile State state = State.CLOSED;
+    private final AtomicInteger failures = new AtomicInteger();
+    private long openedAt; // Guarded by lock
+    private boolean probing; // Guarded by lock
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0, openMillis);
+    }
+
+    /**
+     * Waits until a call may go to the engine and returns whether the call is
+     * the half-open probe. Every call let through must end with
+     * {@link #onSuccess} or {@link #onFailure} given that flag, also when it
+     * throws an {@link Error}, or a half-open probe would never end.
+     */
+    boolean acquire() throws InterruptedException {
+        if (state == State.CLOSED) {
+            return false;
+        }
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (state == State.CLOSED) {
+                    return false;
+                }
+                if (state == State.OPEN) {
+                    long remaining = openedAt + openMillis - System.currentTimeMillis();
+                    if (remaining > 0) {
+                        changed.await(remaining, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+                    state = State.HALF_OPEN;
+                    System.out.println("Circuit breaker half-open: probing the crypto engine");
+                }
+                if (!probing) {
+                    probing = true;
+                    return true;
+                }
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onSuccess(boolean probe) {
+        if (failures.get() != 0) {
+            failures.set(0);
+        }
+        if (!probe) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                state = State.CLOSED;
+                probing = false;
+                System.out.println("Circuit breaker closed: crypto engine is responding again");
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onFailure(boolean probe) {
+        int count = failures.incrementAndGet();
+        if (!probe && (state != State.CLOSED || count < failureThreshold)) {
+            return; // Below the threshold, or a late failure of a call started before the circuit opened
+        }
+        lock.lock();
+        try {
+            if (probe ? state == State.HALF_OPEN : state == State.CLOSED && failures.get() >= failureThreshold) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        probing = false;
+        openedAt = System.currentTimeMillis();
+        System.err.println("Circuit breaker open after " + failures.get()
+                + " consecutive errors: pausing crypto calls for " + openMillis + " ms");
+        changed.signalAll();
+    }
+
+    State getState() {
+        return state;
+    }
+}
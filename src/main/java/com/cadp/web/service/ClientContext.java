@@ -0,0 +1,72 @@
+package com.cadp.web.service;
+
+import java.util.Objects;
+
+/**
+ * Immutable handle on a Key Manager registration, obtained from
+ * {@link CadpClient#contextFor} and held by a job for its whole run.
+ * <p>
+ * Two handles are equal when host, port, registration token and user all
+ * match; the registry in {@link CadpClient} keeps one per combination and
+ * registers each host, port and token only once. The user is what reveal
+ * calls run as.
+ */
+public final class ClientContext {
+
+    private final String host;
+    private final String port;
+    private final String token;
+    private final String userName;
+
+    ClientContext(String host, String port, String token, String userName) {
+        this.host = host;
+        this.port = port;
+        this.token = token;
+        this.userName = userName;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    // What the Key Manager registration depends on; the user is only passed on reveal
+    String registrationKey() {
+        return host + ":" + port + ":" + token;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClientContext)) {
+            return false;
+        }
+        ClientContext other = (ClientContext) o;
+        return Objects.equals(host, other.host) && Objects.equals(port, other.port)
+                && Objects.equals(token, other.token) && Objects.equals(userName, other.userName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port, token, userName);
+    }
+
+    // Never prints the token
+    @Override
+    public String toString() {
+        return userName + "@" + host + ":" + port;
+    }
+}
@@ -0,0 +1,118 @@
+package com.cadp.web.service;
+
+import com.cadp.web.dto.ColumnTransform;
+import com.cadp.web.dto.JobRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Per-column transforms of a job, so one pass over a file can protect some
+ * columns and reveal others, each under its own policy.
+ * <p>
+ * A request's selected {@code columns} get the job's mode and policy; its
+ * {@code transforms} add columns or override them, and an entry without a
+ * mode or policy takes the job's. As a form parameter the overrides are
+ * written {@code column:mode:policy}, comma-separated, e.g.
+ * {@code 1:protect:ssn_policy,3::email_policy,5:reveal}; a fourth field
+ * {@code deterministic} marks an override's own policy as deterministic.
+ * <p>
+ * Determinism belongs to the policy: the job's {@code deterministicPolicy}
+ * flag covers only columns under the job's policy, never a column with a
+ * policy of its own, whose protect results would otherwise be cached and
+ * repeat for equal inputs under a randomized policy.
+ */
+public final class ColumnTransforms {
+
+    private ColumnTransforms() {
+    }
+
+    /**
+     * Parses the form-parameter notation; {@code null} or blank gives an
+     * empty list.
+     */
+    public static List<ColumnTransform> parse(String spec) {
+        List<ColumnTransform> transforms = new ArrayList<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return transforms;
+        }
+        for (String entry : spec.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":", 4);
+            String flag = parts.length > 3 ? parts[3].trim() : "";
+            if (!flag.isEmpty() && !"deterministic".equals(flag)) {
+                throw new IllegalArgumentException("Invalid column transform: " + entry.trim());
+            }
+            try {
+                transforms.add(new ColumnTransform(Integer.parseInt(parts[0].trim()),
+                        parts.length > 1 ? parts[1].trim() : "", parts.length > 2 ? parts[2].trim() : "",
+                        !flag.isEmpty()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid column transform: " + entry.trim());
+            }
+        }
+        return transforms;
+    }
+
+    // The notation parse reads back; how overrides are stored with a job
+    static String format(List<ColumnTransform> transforms) {
+        if (transforms == null) {
+            return "";
+        }
+        return transforms.stream()
+                .map(t -> t.getColumn() + ":" + nullToEmpty(t.getMode()) + ":" + nullToEmpty(t.getPolicy())
+                        + (t.isDeterministic() ? ":deterministic" : ""))
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * What the job does, one entry per target column in column order, with
+     * mode (lower case), policy and determinism filled in. Empty when there is nothing to
+     * protect or reveal. Throws {@link IllegalArgumentException} for a
+     * negative column or an override that is neither protect nor reveal.
+     */
+    public static List<ColumnTransform> resolve(JobRequest request) {
+        Map<Integer, ColumnTransform> byColumn = new TreeMap<>();
+        String mode = request.getMode() != null ? request.getMode().toLowerCase() : "";
+        if (isTransform(mode) && request.getColumns() != null) {
+            for (int column : FieldScanner.normalizeColumns(request.getColumns())) {
+                byColumn.put(column, new ColumnTransform(column, mode, request.getPolicy(),
+                        request.isDeterministicPolicy()));
+            }
+        }
+        if (request.getTransforms() != null) {
+            for (ColumnTransform t : request.getTransforms()) {
+                if (t.getColumn() < 0) {
+                    throw new IllegalArgumentException("Invalid column in transform: " + t.getColumn());
+                }
+                String columnMode = isBlank(t.getMode()) ? mode : t.getMode().toLowerCase();
+                if (!isTransform(columnMode)) {
+                    throw new IllegalArgumentException(
+                            "Column " + t.getColumn() + ": mode must be protect or reveal, not '" + columnMode + "'");
+                }
+                String policy = isBlank(t.getPolicy()) ? request.getPolicy() : t.getPolicy();
+                boolean jobPolicy = policy != null && policy.equals(request.getPolicy());
+                byColumn.put(t.getColumn(), new ColumnTransform(t.getColumn(), columnMode, policy,
+                        t.isDeterministic() || (jobPolicy && request.isDeterministicPolicy())));
+            }
+        }
+        return new ArrayList<>(byColumn.values());
+    }
+
+    private static boolean isTransform(String mode) {
+        return "protect".equals(mode) || "reveal".equals(mode);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
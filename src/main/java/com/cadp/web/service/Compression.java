@@ -0,0 +1,50 @@
+package com.cadp.web.service;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * gzip detection for inputs. Compressed input is recognized by its magic
+ * bytes rather than its name, so a renamed or extension-less upload works too.
+ */
+public final class Compression {
+
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Compression() {
+    }
+
+    public static boolean isGzip(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+        }
+    }
+
+    /**
+     * Returns {@code in} decompressed when it starts with a gzip header,
+     * otherwise as-is. Concatenated gzip members are read as one stream.
+     */
+    public static InputStream decompressIfGzip(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        boolean gzip = buffered.read() == GZIP_MAGIC_1 && buffered.read() == GZIP_MAGIC_2;
+        buffered.reset();
+        return gzip ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+    }
+
+    // "data.csv.gz" -> "data.csv"
+    static String stripGzipSuffix(String filename) {
+        if (filename.length() > GZIP_SUFFIX.length() && filename.toLowerCase().endsWith(GZIP_SUFFIX)) {
+            return filename.substring(0, filename.length() - GZIP_SUFFIX.length());
+        }
+        return filename;
+    }
+}
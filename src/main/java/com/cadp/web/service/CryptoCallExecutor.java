@@ -0,0 +1,138 @@
+package com.cadp.web.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs crypto calls one per value on virtual threads, for engines whose calls
+ * mostly wait on the Key Manager.
+ * <p>
+ * A worker thread hands over a column's values and waits for the results;
+ * each value becomes one call on its own virtual thread, so a chunk's calls
+ * are in flight together instead of one after another. A semaphore shared by
+ * all jobs caps the calls in flight at {@code maxInFlight}; a worker blocks
+ * while the cap is reached. A call counts against the cap until it returns,
+ * also after its job was cancelled. Parsing and writing stay on the platform
+ * worker threads.
+ * <p>
+ * Virtual threads need Java 21. The executor is looked up at runtime, so the
+ * application still targets Java 11 and {@link #virtual} returns {@code null}
+ * on older runtimes.
+ */
+final class CryptoCallExecutor {
+
+    interface Call {
+        byte[] apply(byte[] value) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+
+    private CryptoCallExecutor(ExecutorService executor, int maxInFlight) {
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+    }
+
+    /**
+     * A virtual-thread executor, or {@code null} when the runtime has no
+     * virtual threads.
+     */
+    static CryptoCallExecutor virtual(int maxInFlight) {
+        try {
+            ExecutorService executor = (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                            MethodType.methodType(ExecutorService.class))
+                    .invoke();
+            return new CryptoCallExecutor(executor, maxInFlight);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create the virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Applies {@code call} to every value concurrently and returns the results
+     * in order, {@code null} for a value whose call failed.
+     */
+    byte[][] invokeAll(List<byte[]> values, Call call) throws InterruptedException {
+        byte[][] results = new byte[values.size()][];
+        List<Future<?>> calls = new ArrayList<>(values.size());
+        try {
+            for (int i = 0; i < values.size(); i++) {
+                int index = i;
+                byte[] value = values.get(i);
+                inFlight.acquire();
+                // Whoever claims the permit releases it: the call once it has returned, or done() if cancelled first
+                AtomicBoolean claimed = new AtomicBoolean();
+                FutureTask<Void> task = new FutureTask<Void>(() -> {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return null;
+                    }
+                    try {
+                        results[index] = call.apply(value);
+                    } catch (Exception e) {
+                        if (e instanceof InterruptedException) {
+                            Thread.currentThread().interrupt();
+                        }
+                        results[index] = null;
+                    } finally {
+                        // Not before: a cancelled call can still be blocked in I/O and counts until it returns
+                        inFlight.release();
+                    }
+                    return null;
+                }) {
+                    @Override
+                    protected void done() {
+                        if (claimed.compareAndSet(false, true)) {
+                            inFlight.release();
+                        }
+                    }
+                };
+                try {
+                    executor.execute(task);
+                } catch (RuntimeException e) {
+                    task.cancel(false);
+                    throw e;
+                }
+                calls.add(task);
+            }
+            for (Future<?> f : calls) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            // A cancelled job stops its calls rather than waiting for them
+            for (Future<?> f : calls) {
+                f.cancel(true);
+            }
+            throw e;
+        } catch (ExecutionException | CancellationException e) {
+            throw new IllegalStateException("Crypto call did not complete", e);
+        }
+        return results;
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,53 @@
+package com.cadp.web.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Low-level crypto backend used by {@link CadpClient}.
+ * <p>
+ * Implementations work on raw bytes; string encoding and error accounting stay
+ * in {@link CadpClient} so every engine behaves the same from the pipeline's
+ * point of view.
+ */
+public interface CryptoEngine {
+
+    /**
+     * Registers this process with the Key Manager (no-op for local engines).
+     */
+    void register(String host, String port, String token) throws Exception;
+
+    byte[] protect(byte[] plainText, String policyName) throws Exception;
+
+    byte[] reveal(byte[] cipherText, String policyName, String userName) throws Exception;
+
+    /**
+     * Protects a batch of values under one policy. Results are in input order.
+     * The default loops over {@link #protect}; engines with a native bulk call
+     * should override it to pay the per-call overhead once per batch.
+     */
+    default List<byte[]> protectBatch(List<byte[]> plainTexts, String policyName) throws Exception {
+        List<byte[]> results = new ArrayList<>(plainTexts.size());
+        for (byte[] plainText : plainTexts) {
+            results.add(protect(plainText, policyName));
+        }
+        return results;
+    }
+
+    /**
+     * Reveals a batch of values under one policy. Results are in input order.
+     */
+    default List<byte[]> revealBatch(List<byte[]> cipherTexts, String policyName, String userName)
+            throws Exception {
+        List<byte[]> results = new ArrayList<>(cipherTexts.size());
+        for (byte[] cipherText : cipherTexts) {
+            results.add(reveal(cipherText, policyName, userName));
+        }
+        return results;
+    }
+
+    /**
+     * Short identifier used in logs and configuration ("cadp", "stub").
+     */
+    String getName();
+}
@@ -0,0 +1,78 @@
+package com.cadp.web.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * {@link BufferedReader} whose {@link #readLine} returns whole RFC 4180
+ * records: a line break inside a quoted field does not end the record and is
+ * kept verbatim ({@code \n} or {@code \r\n}), so quoting and embedded newlines
+ * survive the round trip unchanged.
+ * <p>
+ * Only quote parity is tracked, which costs one pass over the characters on
+ * the reader thread; field parsing stays with the pipeline workers. Records
+ * always end at an unquoted line break, which makes every chunk boundary a
+ * safe split point for parallel processing.
+ */
+public class CsvRecordReader extends BufferedReader {
+
+    private final char[] buffer = new char[64 * 1024];
+    private final StringBuilder record = new StringBuilder(256);
+    private int position;
+    private int limit;
+    private boolean skipLineFeed;
+
+    public CsvRecordReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        record.setLength(0);
+        boolean inQuotes = false;
+        boolean readAny = false;
+
+        while (true) {
+            if (position >= limit && !fill()) {
+                return readAny ? record.toString() : null;
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (buffer[position] == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            readAny = true;
+
+            int start = position;
+            while (position < limit) {
+                char ch = buffer[position];
+                if (ch == '"') {
+                    inQuotes = !inQuotes; // An escaped "" toggles twice
+                } else if (!inQuotes && (ch == '\n' || ch == '\r')) {
+                    record.append(buffer, start, position - start);
+                    position++;
+                    skipLineFeed = ch == '\r';
+                    return record.toString();
+                }
+                position++;
+            }
+            record.append(buffer, start, position - start);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = super.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
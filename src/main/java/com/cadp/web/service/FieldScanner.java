@@ -0,0 +1,254 @@
+package com.cadp.web.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass field tokenizer for delimited lines.
+ * <p>
+ * Unlike {@link String#split}, the delimiter is always taken literally (a
+ * {@code |} is a pipe, not regex alternation) and nothing is allocated while
+ * scanning: {@link #locate} only records the offsets of the wanted columns, so
+ * untouched fields are never materialized and can be copied straight from the
+ * original line when it is rebuilt.
+ * <p>
+ * In quoted mode fields follow RFC 4180: a field that starts with {@code "}
+ * runs to the matching closing quote, may contain delimiters and line breaks,
+ * and escapes quotes by doubling them. Offsets then cover the raw field
+ * including its quotes; {@link #value} returns the unquoted content.
+ */
+public final class FieldScanner {
+
+    private FieldScanner() {
+    }
+
+    /**
+     * Maps the UI's escaped form of special delimiters to the real character.
+     */
+    public static String unescape(String delimiter) {
+        if ("\\t".equals(delimiter)) {
+            return "\t";
+        }
+        return delimiter;
+    }
+
+    /**
+     * Records the start/end offsets of the given columns, which must be sorted
+     * ascending and distinct, into {@code starts}/{@code ends} beginning at
+     * {@code offset}. Columns beyond the end of the line get {@code -1}.
+     * Scanning stops after the last wanted column.
+     */
+    public static void locate(String line, String delimiter, int[] columns, int[] starts, int[] ends, int offset) {
+        locate(line, delimiter, false, columns, starts, ends, offset);
+    }
+
+    /**
+     * Same as {@link #locate(String, String, int[], int[], int[], int)}, with
+     * delimiters inside quoted fields ignored when {@code quoted} is set.
+     */
+    public static void locate(String line, String delimiter, boolean quoted, int[] columns, int[] starts,
+            int[] ends, int offset) {
+        int length = line.length();
+        int delimiterLength = delimiter.length();
+
+        int field = 0;
+        int fieldStart = 0;
+        int c = 0;
+        while (c < columns.length) {
+            int fieldEnd = nextDelimiter(line, delimiter, fieldStart, quoted);
+            boolean last = fieldEnd < 0;
+            if (last) {
+                fieldEnd = length;
+            }
+
+            while (c < columns.length && columns[c] == field) {
+                starts[offset + c] = fieldStart;
+                ends[offset + c] = fieldEnd;
+                c++;
+            }
+            if (last) {
+                break;
+            }
+            field++;
+            fieldStart = fieldEnd + delimiterLength;
+        }
+
+        for (; c < columns.length; c++) {
+            starts[offset + c] = -1;
+            ends[offset + c] = -1;
+        }
+    }
+
+    // Position of the delimiter ending the field at fieldStart, or -1 for the last field
+    private static int nextDelimiter(String line, String delimiter, int fieldStart, boolean quoted) {
+        if (delimiter.isEmpty()) {
+            return -1;
+        }
+        int from = fieldStart;
+        if (quoted && from < line.length() && line.charAt(from) == '"') {
+            int i = from + 1;
+            while (true) {
+                int quote = line.indexOf('"', i);
+                if (quote < 0) {
+                    return -1; // Unterminated quote: the rest of the record is this field
+                }
+                if (quote + 1 < line.length() && line.charAt(quote + 1) == '"') {
+                    i = quote + 2; // Escaped quote
+                    continue;
+                }
+                from = quote + 1;
+                break;
+            }
+        }
+        if (delimiter.length() == 1) {
+            return line.indexOf(delimiter.charAt(0), from);
+        }
+        return line.indexOf(delimiter, from);
+    }
+
+    /**
+     * Byte-level {@link #locate(String, String, int[], int[], int[], int)} over
+     * {@code data[from, to)} for unquoted UTF-8 lines; offsets are absolute
+     * positions in {@code data}. Matching the delimiter's bytes is safe because
+     * a UTF-8 sequence never occurs inside another character's encoding.
+     */
+    public static void locate(byte[] data, int from, int to, byte[] delimiter, int[] columns, int[] starts,
+            int[] ends, int offset) {
+        int field = 0;
+        int fieldStart = from;
+        int c = 0;
+        while (c < columns.length) {
+            int fieldEnd = indexOf(data, fieldStart, to, delimiter);
+            boolean last = fieldEnd < 0;
+            if (last) {
+                fieldEnd = to;
+            }
+
+            while (c < columns.length && columns[c] == field) {
+                starts[offset + c] = fieldStart;
+                ends[offset + c] = fieldEnd;
+                c++;
+            }
+            if (last) {
+                break;
+            }
+            field++;
+            fieldStart = fieldEnd + delimiter.length;
+        }
+
+        for (; c < columns.length; c++) {
+            starts[offset + c] = -1;
+            ends[offset + c] = -1;
+        }
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte[] delimiter) {
+        if (delimiter.length == 0) {
+            return -1;
+        }
+        byte first = delimiter[0];
+        for (int i = from; i <= to - delimiter.length; i++) {
+            if (data[i] != first) {
+                continue;
+            }
+            int k = 1;
+            while (k < delimiter.length && data[i + k] == delimiter[k]) {
+                k++;
+            }
+            if (k == delimiter.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * True if the raw field between the offsets is enclosed in quotes.
+     */
+    public static boolean isQuoted(String line, int start, int end) {
+        return end - start >= 2 && line.charAt(start) == '"' && line.charAt(end - 1) == '"';
+    }
+
+    /**
+     * Content of the raw field between the offsets, unquoted in quoted mode.
+     */
+    public static String value(String line, int start, int end, boolean quoted) {
+        if (quoted && isQuoted(line, start, end)) {
+            String inner = line.substring(start + 1, end - 1);
+            return inner.indexOf('"') >= 0 ? inner.replace("\"\"", "\"") : inner;
+        }
+        return line.substring(start, end);
+    }
+
+    /**
+     * Appends a value in quoted mode: enclosed in quotes if the original field
+     * was, or if the value contains the delimiter, a quote or a line break.
+     */
+    public static void appendQuotedIfNeeded(StringBuilder out, String value, String delimiter,
+            boolean wasQuoted) {
+        boolean needsQuotes = wasQuoted || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                || value.indexOf('\r') >= 0 || (!delimiter.isEmpty() && value.contains(delimiter));
+        if (!needsQuotes) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') {
+                out.append('"');
+            }
+            out.append(ch);
+        }
+        out.append('"');
+    }
+
+    /**
+     * Returns one field, or {@code null} if the line has fewer columns.
+     */
+    public static String field(String line, String delimiter, int column) {
+        return field(line, delimiter, false, column);
+    }
+
+    /**
+     * Returns one field, unquoted in quoted mode, or {@code null} if the line
+     * has fewer columns.
+     */
+    public static String field(String line, String delimiter, boolean quoted, int column) {
+        int[] start = new int[1];
+        int[] end = new int[1];
+        locate(line, delimiter, quoted, new int[] { column }, start, end, 0);
+        return start[0] < 0 ? null : value(line, start[0], end[0], quoted);
+    }
+
+    /**
+     * Splits a line into all of its fields, keeping trailing empty fields like
+     * {@code split(delimiter, -1)}.
+     */
+    public static List<String> split(String line, String delimiter) {
+        return split(line, delimiter, false);
+    }
+
+    /**
+     * Splits a line into all of its fields, unquoted in quoted mode.
+     */
+    public static List<String> split(String line, String delimiter, boolean quoted) {
+        List<String> fields = new ArrayList<>();
+        int fieldStart = 0;
+        int fieldEnd;
+        while ((fieldEnd = nextDelimiter(line, delimiter, fieldStart, quoted)) >= 0) {
+            fields.add(value(line, fieldStart, fieldEnd, quoted));
+            fieldStart = fieldEnd + delimiter.length();
+        }
+        fields.add(value(line, fieldStart, line.length(), quoted));
+        return fields;
+    }
+
+    /**
+     * Sorted, distinct, non-negative copy of the selected column indices.
+     */
+    public static int[] normalizeColumns(List<Integer> columnIndices) {
+        return columnIndices.stream().filter(c -> c != null && c >= 0).mapToInt(Integer::intValue).sorted()
+                .distinct().toArray();
+    }
+}
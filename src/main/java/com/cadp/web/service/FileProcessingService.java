@@ -1,12 +1,17 @@
 package com.cadp.web.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -20,43 +25,83 @@ public class FileProcessingService {
     @Autowired
     private CadpClient cadpClient;
 
-    // Job Status Map
-    private final Map<String, com.cadp.web.dto.JobStatus> jobMap = new ConcurrentHashMap<>();
+    @Autowired
+    private JobScheduler jobScheduler;
+
+    @Autowired
+    private JobCheckpointStore checkpointStore;
+
+    // Resume interrupted jobs at startup instead of waiting for the user to do it
+    @Value("${cadp.jobs.auto-resume:false}")
+    private boolean autoResume;
+
+    // Files at least this large are read in parallel byte ranges (memory-mapped)
+    @Value("${cadp.processing.parallel-read-threshold-mb:64}")
+    private long parallelReadThresholdMb;
+
+    // Count the records of plain-text inputs before processing: totals and ETA up front, split points, resume seek
+    @Value("${cadp.processing.prescan:true}")
+    private boolean prescan;
 
-    // Result File Map (Simple storage for download)
-    private final Map<String, File> resultFiles = new ConcurrentHashMap<>();
+    // Upper bound for a job's value cache, whatever the request asks for
+    @Value("${cadp.cache.max-entries:100000}")
+    private int cacheMaxEntries;
+
+    // Grant jobs their full worker share and let the adaptive limiter decide how many crypto calls run at once
+    @Value("${cadp.adaptive.enabled:true}")
+    private boolean adaptiveConcurrency;
+
+    // Replaced by the Spring bean; services built outside Spring record nowhere
+    @Autowired
+    private PipelineMetrics metrics = PipelineMetrics.noop();
+
+    // Jobs, their directories and result files; evicts expired ones
+    @Autowired
+    private JobRegistry jobRegistry;
+
+    // Jobs found unfinished on disk at startup, waiting for resume or discard
+    private final Map<String, JobCheckpointStore.StoredJob> interruptedJobs = new ConcurrentHashMap<>();
 
     public com.cadp.web.dto.JobStatus getJobStatus(String jobId) {
-        return jobMap.get(jobId);
+        return jobRegistry.get(jobId);
     }
 
     public File getResultFile(String jobId) {
-        return resultFiles.get(jobId);
+        return jobRegistry.getResult(jobId);
     }
 
-    public com.cadp.web.dto.FilePreview generatePreview(MultipartFile file, String delimiter) throws Exception {
+    public com.cadp.web.dto.FilePreview generatePreview(MultipartFile file, String delimiter, boolean quoted)
+            throws Exception {
         com.cadp.web.dto.FilePreview preview = new com.cadp.web.dto.FilePreview();
         preview.setFilename(file.getOriginalFilename());
 
+        if (ParquetFileProcessor.hasParquetName(file.getOriginalFilename())) {
+            // The browser sends the end of a Parquet file, where the footer holds the schema
+            java.util.List<java.util.List<String>> schema = ParquetFileProcessor.previewSchema(file.getBytes());
+            preview.setHeaders(schema.get(0));
+            preview.setRows(schema);
+            preview.setTotalRows(schema.size());
+            return preview;
+        }
+
         java.util.List<java.util.List<String>> rows = new java.util.ArrayList<>();
 
         // Handle escaped delimiter like "\t"
-        String actualDelimiter = delimiter;
-        if ("\\t".equals(delimiter)) {
-            actualDelimiter = "\t";
-        }
+        String actualDelimiter = FieldScanner.unescape(delimiter);
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
+        try (BufferedReader reader = openRecords(new InputStreamReader(
+                Compression.decompressIfGzip(file.getInputStream()), StandardCharsets.UTF_8), quoted)) {
             String line;
             int count = 0;
             // Read up to 10 rows for preview
             while ((line = reader.readLine()) != null && count < 10) {
                 if (line.trim().isEmpty())
                     continue;
-                String[] parts = line.split(actualDelimiter, -1);
-                rows.add(java.util.Arrays.asList(parts));
+                rows.add(FieldScanner.split(line, actualDelimiter, quoted));
                 count++;
             }
+        } catch (EOFException e) {
+            // The browser sends only the start of the file; a gzip stream cut short ends here
         }
 
         if (!rows.isEmpty()) {
@@ -69,297 +114,892 @@ public class FileProcessingService {
         return preview;
     }
 
-    public File processFileWithConfig(MultipartFile file, String mode, List<Integer> columnIndices, String policy,
-            String delimiter, boolean skipHeader, com.cadp.web.dto.CadpConfig config) throws Exception {
-        // Update Config if provided
-        if (config != null) {
-            cadpClient.reconfigure(config.getHost(), config.getPort(), config.getToken(), config.getUserName());
+    // Parquet input skips the text pre-flight check and the streaming upload
+    public boolean isParquet(MultipartFile file) throws IOException {
+        if (ParquetFileProcessor.hasParquetName(file.getOriginalFilename())) {
+            return true;
+        }
+        try (InputStream in = file.getInputStream()) {
+            return ParquetFileProcessor.startsWithMagic(in);
         }
-        return processFile(file, mode, columnIndices, policy, delimiter, skipHeader);
     }
 
-    public File processFile(MultipartFile file, String mode, List<Integer> columnIndices, String policy,
-            String delimiter, boolean skipHeader) throws Exception {
-        // Create temp input and output files
-        Path tempDir = Files.createTempDirectory("cadp_upload");
-        File inputFile = tempDir.resolve(file.getOriginalFilename()).toFile();
-        file.transferTo(inputFile);
+    public boolean isParquet(File file) throws IOException {
+        return ParquetFileProcessor.isParquet(file);
+    }
 
-        String outputPrefix = (mode != null ? mode.toLowerCase() : "processed") + "_";
-        File outputFile = tempDir.resolve(outputPrefix + file.getOriginalFilename()).toFile();
+    // Column names and types of a Parquet result, shown instead of its rows
+    public java.util.List<java.util.List<String>> describeParquet(File file) throws IOException {
+        return ParquetFileProcessor.previewSchema(file);
+    }
 
-        // Use a fixed thread pool of 8 threads
-        int threadCount = 8;
-        // Process in chunks to avoid OOM
-        int chunkSize = 1000;
+    // Async Processing Method
+    // The request carries the client context from CadpClient#contextFor; none means the configured one
+    public String processFileAsync(MultipartFile file, com.cadp.web.dto.JobRequest request)
+            throws Exception {
 
-        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threadCount);
+        String jobId = UUID.randomUUID().toString();
+        keepClientContext(request);
+        // The upload plus an output that can be larger than the input (tokens, encoding)
+        jobRegistry.reserve(jobId, checkpointStore.getJobsDir(), file.getSize() * 3);
+        com.cadp.web.dto.JobStatus job = createJob(jobId, request);
+
+        // Durable job directory, so the job can be resumed after a restart
+        JobCheckpointStore.StoredJob stored = new JobCheckpointStore.StoredJob();
+        stored.jobId = jobId;
+        stored.dir = checkpointStore.createJobDir(jobId);
+        jobRegistry.setDir(jobId, stored.dir);
+        stored.inputFile = new File(stored.dir, safeFilename(file.getOriginalFilename()));
+        stored.outputFile = outputFileFor(stored.dir.toPath(), request);
+        stored.startTime = job.getStartTime();
+        stored.request = request;
+
+        try {
+            // Spring has already spooled the part to disk; transferTo moves it when it can rather than copying
+            file.transferTo(stored.inputFile);
+            checkpointStore.save(stored);
+        } catch (IOException e) {
+            job.setStatus("FAILED");
+            job.setErrorMessage(e.getMessage());
+            jobRegistry.finished(jobId);
+            throw e;
+        }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-                BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+        submitStored(job, stored);
+        return jobId;
+    }
 
-            String line;
-            long lineNum = 0;
+    /**
+     * Queues a job over a file that is already on the server, read in place
+     * without an upload copy. The output is written into the result's
+     * directory under a temporary name and renamed to {@code resultFile} once
+     * complete, so only finished outputs ever carry their final name. A job
+     * that cannot be admitted is returned FAILED rather than thrown, so one
+     * file does not stop the others of a batch.
+     */
+    public com.cadp.web.dto.JobStatus processPathAsync(File inputFile, File resultFile,
+            com.cadp.web.dto.JobRequest request) {
+        String jobId = UUID.randomUUID().toString();
+        keepClientContext(request);
+        com.cadp.web.dto.JobStatus job = createJob(jobId, request);
+
+        JobCheckpointStore.StoredJob stored = new JobCheckpointStore.StoredJob();
+        stored.jobId = jobId;
+        stored.inputFile = inputFile;
+        stored.outputFile = new File(resultFile.getParentFile(), "." + resultFile.getName() + "." + jobId + ".tmp");
+        stored.resultFile = resultFile;
+        stored.startTime = job.getStartTime();
+        stored.request = request;
+        try {
+            // No upload to hold, only an output that can be larger than the input
+            jobRegistry.reserve(jobId, resultFile.getParentFile().toPath(), inputFile.length() * 2);
+            stored.dir = checkpointStore.createJobDir(jobId);
+            jobRegistry.setDir(jobId, stored.dir);
+            checkpointStore.save(stored);
+        } catch (IOException | InsufficientStorageException e) {
+            job.setStatus("FAILED");
+            job.setErrorMessage(e.getMessage());
+            jobRegistry.finished(jobId);
+            return job;
+        }
 
-            // Handle escaped delimiter like "\t"
-            String actualDelimiter = delimiter;
-            if ("\\t".equals(delimiter)) {
-                actualDelimiter = "\t";
-            }
-            final String finalDelimiter = actualDelimiter;
+        submitStored(job, stored);
+        return job;
+    }
 
-            List<java.util.concurrent.Future<String>> currentChunkFutures = new ArrayList<>(chunkSize);
+    // A stored job records the context it runs under, so pin the configured one when none is given
+    private void keepClientContext(com.cadp.web.dto.JobRequest request) {
+        if (request.getClientContext() == null) {
+            request.setClientContext(cadpClient.getDefaultContext());
+        }
+    }
 
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue;
+    private void submitStored(com.cadp.web.dto.JobStatus job, JobCheckpointStore.StoredJob stored) {
+        com.cadp.web.dto.JobRequest request = stored.request;
+        jobRegistry.setDir(job.getJobId(), stored.dir);
+        jobScheduler.submit(job, request.getPriority(), () -> {
+            JobJournal journal = null;
+            try {
+                journal = checkpointStore.openJournal(stored.dir);
+                JobJournal checkpoints = journal;
+                runJob(job, stored.resultFile != null ? stored.resultFile : stored.outputFile,
+                        grantedThreads -> {
+                            processFileInternal(stored.inputFile, stored.outputFile, request, job, grantedThreads,
+                                    checkpoints);
+                            if (stored.resultFile != null) {
+                                Files.move(stored.outputFile.toPath(), stored.resultFile.toPath(),
+                                        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                            }
+                        },
+                        request.getThreadCount());
+            } catch (IOException e) {
+                job.setStatus("FAILED");
+                job.setErrorMessage(e.getMessage());
+                jobRegistry.finished(job.getJobId());
+            } finally {
+                if (journal != null) {
+                    journal.close();
                 }
-
-                if (skipHeader && lineNum == 0) {
-                    writer.write(line);
-                    writer.newLine();
-                    lineNum++;
-                    continue;
+                // A job cut off by shutdown keeps its checkpoints for the next start
+                if (!jobScheduler.isShuttingDown()) {
+                    checkpointStore.finish(stored);
                 }
+            }
+        });
+    }
 
-                // Capture variables for lambda
-                final String currentLine = line;
-
-                currentChunkFutures.add(executor.submit(() -> {
-                    String[] parts = currentLine.split(finalDelimiter, -1);
-
-                    for (int columnIndex : columnIndices) {
-                        if (parts.length > columnIndex) {
-                            try {
-                                String target = parts[columnIndex];
-                                String processed = target;
-                                if (target != null && !target.isEmpty()) {
-                                    if ("protect".equalsIgnoreCase(mode)) {
-                                        processed = cadpClient.protect(target, policy);
-                                    } else if ("reveal".equalsIgnoreCase(mode)) {
-                                        processed = cadpClient.reveal(target, policy);
-                                    }
-                                }
-                                parts[columnIndex] = processed;
-                            } catch (Exception e) {
-                                parts[columnIndex] = "ERROR";
-                            }
-                        }
-                    }
-                    return String.join(finalDelimiter, parts);
-                }));
-
-                // If chunk is full, process it
-                if (currentChunkFutures.size() >= chunkSize) {
-                    writeChunkResults(writer, currentChunkFutures);
-                    currentChunkFutures.clear();
-                    // Optional: Call System.gc() periodically if memory pressure is high?
-                    // Better to rely on limiting active objects which we are doing here.
+    /**
+     * Registers jobs that a previous run left unfinished as INTERRUPTED, with
+     * the progress of their last checkpoint, and resumes them right away when
+     * auto-resume is on.
+     */
+    @PostConstruct
+    public void recoverInterruptedJobs() {
+        for (JobCheckpointStore.StoredJob stored : checkpointStore.findUnfinished()) {
+            com.cadp.web.dto.JobStatus job = createJob(stored.jobId, stored.request);
+            job.setStartTime(stored.startTime);
+            job.setStatus("INTERRUPTED");
+            JobJournal journal = null;
+            try {
+                journal = checkpointStore.openJournal(stored.dir);
+                long[] totals = journal.totals();
+                job.setProcessedLines(totals[0]);
+                job.setErrorCount(totals[1]);
+            } catch (IOException e) {
+                System.err.println("Failed to read checkpoints of job " + stored.jobId + ": " + e.getMessage());
+            } finally {
+                if (journal != null) {
+                    journal.close();
+                }
+            }
+            interruptedJobs.put(stored.jobId, stored);
+            System.out.println("Found interrupted job " + stored.jobId + " (" + stored.request.getFilename()
+                    + "), " + job.getProcessedLines() + " lines checkpointed");
+            if (autoResume) {
+                try {
+                    resumeJob(stored.jobId, null);
+                } catch (Exception e) {
+                    System.err.println("Cannot resume job " + stored.jobId + " automatically: " + e.getMessage());
                 }
-
-                lineNum++;
             }
+        }
+    }
 
-            // Process remaining futures
-            if (!currentChunkFutures.isEmpty()) {
-                writeChunkResults(writer, currentChunkFutures);
-                currentChunkFutures.clear();
+    public List<com.cadp.web.dto.JobStatus> getInterruptedJobs() {
+        List<com.cadp.web.dto.JobStatus> jobs = new ArrayList<>();
+        for (String jobId : interruptedJobs.keySet()) {
+            com.cadp.web.dto.JobStatus job = jobRegistry.get(jobId);
+            if (job != null) {
+                jobs.add(job);
             }
+        }
+        return jobs;
+    }
 
-        } finally {
-            executor.shutdown();
+    public boolean isInterrupted(String jobId) {
+        return interruptedJobs.containsKey(jobId);
+    }
+
+    /**
+     * Queues an interrupted job again; it continues from its last checkpoint
+     * under the Key Manager and user it was started with. {@code token} is
+     * that connection's registration token, needed only when this server is
+     * not registered with it; otherwise the job is refused with an
+     * {@link IllegalArgumentException} and stays interrupted.
+     */
+    public com.cadp.web.dto.JobStatus resumeJob(String jobId, String token) throws Exception {
+        JobCheckpointStore.StoredJob stored = interruptedJobs.get(jobId);
+        com.cadp.web.dto.JobStatus job = jobRegistry.get(jobId);
+        if (stored == null || job == null) {
+            throw new IllegalArgumentException("No interrupted job: " + jobId);
         }
+        stored.request.setClientContext(cadpClient.contextForResume(stored.connection, token));
+        if (!interruptedJobs.remove(jobId, stored)) {
+            throw new IllegalArgumentException("No interrupted job: " + jobId);
+        }
+        submitStored(job, stored);
+        return job;
+    }
 
-        return outputFile;
+    /**
+     * Drops an interrupted job and deletes its files.
+     */
+    public void discardJob(String jobId) {
+        JobCheckpointStore.StoredJob stored = interruptedJobs.remove(jobId);
+        if (stored == null) {
+            throw new IllegalArgumentException("No interrupted job: " + jobId);
+        }
+        jobRegistry.remove(jobId);
+        checkpointStore.discard(stored);
     }
 
-    private void writeChunkResults(BufferedWriter writer, List<java.util.concurrent.Future<String>> futures)
-            throws IOException {
-        for (java.util.concurrent.Future<String> future : futures) {
-            try {
-                String result = future.get(); // Blocks until result is ready
-                writer.write(result);
-                writer.newLine();
-            } catch (Exception e) {
-                writer.write("ERROR_PROCESSING_LINE");
-                writer.newLine();
-                e.printStackTrace();
-            }
+    /**
+     * First half of a streaming upload: registers the job parameters and
+     * returns the job id the data must be sent to.
+     */
+    public String createStreamingJob(com.cadp.web.dto.JobRequest request) throws Exception {
+        if (ParquetFileProcessor.hasParquetName(request.getFilename())) {
+            throw new IllegalArgumentException("Parquet files need random access; upload them instead of streaming");
         }
-        writer.flush(); // Ensure data is written to disk
+
+        String jobId = UUID.randomUUID().toString();
+        // The size is only known once the data arrives; refuse early if the disk is already short
+        jobRegistry.reserve(jobId, Paths.get(System.getProperty("java.io.tmpdir")), 0);
+        createJob(jobId, request);
+        jobRegistry.setPendingStream(jobId, request);
+        return jobId;
     }
 
-    // Async Processing Method
-    public String processFileAsync(MultipartFile file, String mode, List<Integer> columnIndices, String policy,
-            String delimiter, boolean skipHeader, com.cadp.web.dto.CadpConfig config, int threadCount)
+    /**
+     * Second half of a streaming upload: processes rows while the request body
+     * is still arriving, on the calling thread, once the scheduler admits the
+     * job. The input is never written to disk; TCP flow control throttles the
+     * client while the pipeline is saturated or the job is queued. The data
+     * must start arriving within {@code cadp.jobs.stream-timeout-minutes} of
+     * the first half, or the job is dropped.
+     */
+    public com.cadp.web.dto.JobStatus processStream(String jobId, InputStream body, long contentLength)
             throws Exception {
+        com.cadp.web.dto.JobRequest request = jobRegistry.takePendingStream(jobId);
+        com.cadp.web.dto.JobStatus job = jobRegistry.get(jobId);
+        if (request == null || job == null) {
+            throw new IllegalArgumentException("Unknown or already started streaming job: " + jobId);
+        }
+        job.setTotalBytes(Math.max(0, contentLength));
+
+        Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+        try {
+            jobRegistry.reserve(jobId, tmp, Math.max(0, contentLength) * 2);
+        } catch (InsufficientStorageException e) {
+            job.setStatus("FAILED");
+            job.setErrorMessage(e.getMessage());
+            jobRegistry.finished(jobId);
+            throw e;
+        }
+        Path tempDir = Files.createTempDirectory(tmp, JobRegistry.UPLOAD_DIR_PREFIX);
+        jobRegistry.setDir(jobId, tempDir.toFile());
+        File outputFile = outputFileFor(tempDir, request);
+
+        jobScheduler.runInline(job, request.getPriority(),
+                () -> runJob(job, outputFile,
+                        grantedThreads -> processLines(
+                                openRecords(new InputStreamReader(
+                                        Compression.decompressIfGzip(new CountingInputStream(body, job)),
+                                        StandardCharsets.UTF_8), request.isQuoted()),
+                                outputFile, request, job, grantedThreads),
+                        request.getThreadCount()));
+        return job;
+    }
 
-        if (config != null) {
-            cadpClient.reconfigure(config.getHost(), config.getPort(), config.getToken(), config.getUserName());
+    /**
+     * Drops a streaming job that will never receive data, e.g. after a failed
+     * pre-flight check.
+     */
+    public void cancelStreamingJob(String jobId) {
+        com.cadp.web.dto.JobStatus job = jobRegistry.remove(jobId);
+        if (job != null) {
+            job.setStatus("FAILED");
         }
+    }
 
-        String jobId = UUID.randomUUID().toString();
+    private interface JobBody {
+        void run(int grantedThreads) throws Exception;
+    }
+
+    private com.cadp.web.dto.JobStatus createJob(String jobId, com.cadp.web.dto.JobRequest request) {
         com.cadp.web.dto.JobStatus job = new com.cadp.web.dto.JobStatus();
         job.setJobId(jobId);
         job.setStatus("UPLOADING");
-        job.setFilename(file.getOriginalFilename());
+        job.setFilename(request.getFilename());
+        job.setTransforms(ColumnTransforms.resolve(request));
         job.setStartTime(java.time.LocalDateTime.now()
                 .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
         job.setProcessedLines(0);
         job.setErrorCount(0);
-        jobMap.put(jobId, job);
+        jobRegistry.add(job);
+        return job;
+    }
 
-        Path tempDir = Files.createTempDirectory("cadp_upload");
-        File inputFile = tempDir.resolve(file.getOriginalFilename()).toFile();
-        file.transferTo(inputFile);
+    private void runJob(com.cadp.web.dto.JobStatus job, File outputFile, JobBody body, int threadCount) {
+        job.setStatus("PROCESSING");
+        long startTimeMillis = System.currentTimeMillis();
+        metrics.startJob(job);
+
+        try {
+            int grantedThreads = jobScheduler.grantThreads(adaptiveConcurrency ? 0 : threadCount);
+            job.setThreadCount(grantedThreads);
+            body.run(grantedThreads);
+
+            long endTimeMillis = System.currentTimeMillis();
+            job.setStatus("COMPLETED");
+            job.setEndTime(java.time.LocalDateTime.now()
+                    .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            double seconds = (endTimeMillis - startTimeMillis) / 1000.0;
+            job.setDuration(String.format("%.3f s", seconds));
+
+            // Store result for retrieval
+            jobRegistry.setResult(job.getJobId(), outputFile);
+            job.setResultToken(job.getJobId());
+
+        } catch (Exception e) {
+            job.setStatus("FAILED");
+            job.setErrorMessage(e.getMessage());
+            e.printStackTrace();
+        } finally {
+            metrics.endJob(job);
+            // Starts the TTL; a job cut off by shutdown is not finished
+            if (!jobScheduler.isShuttingDown()) {
+                jobRegistry.finished(job.getJobId());
+            }
+        }
+    }
 
+    // "protect_data.csv" for "data.csv" or "data.csv.gz", with ".gz" added for compressed output;
+    // Parquet output keeps the input's own column compression instead
+    static File outputFileFor(Path tempDir, com.cadp.web.dto.JobRequest request) {
+        String mode = request.getMode();
         String outputPrefix = (mode != null ? mode.toLowerCase() : "processed") + "_";
-        File outputFile = tempDir.resolve(outputPrefix + file.getOriginalFilename()).toFile();
+        String name = Compression.stripGzipSuffix(safeFilename(request.getFilename()));
+        String suffix = request.isCompressOutput() && !ParquetFileProcessor.hasParquetName(name)
+                ? Compression.GZIP_SUFFIX
+                : "";
+        return tempDir.resolve(outputPrefix + name + suffix).toFile();
+    }
 
-        new Thread(() -> {
-            job.setStatus("PROCESSING");
-            long startTimeMillis = System.currentTimeMillis();
+    // Keep only the last path element of a client-supplied name
+    private static String safeFilename(String filename) {
+        if (filename == null || filename.trim().isEmpty()) {
+            return "upload.txt";
+        }
+        Path name = java.nio.file.Paths.get(filename.replace('\\', '/')).getFileName();
+        return name != null ? name.toString() : "upload.txt";
+    }
 
-            try {
-                processFileInternal(inputFile, outputFile, mode, columnIndices, policy, delimiter, skipHeader, job,
-                        threadCount);
+    void processFileInternal(File inputFile, File outputFile, com.cadp.web.dto.JobRequest request,
+            com.cadp.web.dto.JobStatus job, int threadCount) throws Exception {
+        processFileInternal(inputFile, outputFile, request, job, threadCount, null);
+    }
 
-                long endTimeMillis = System.currentTimeMillis();
-                job.setStatus("COMPLETED");
-                job.setEndTime(java.time.LocalDateTime.now()
-                        .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                double seconds = (endTimeMillis - startTimeMillis) / 1000.0;
-                job.setDuration(String.format("%.3f s", seconds));
+    /**
+     * Same as above, checkpointing into {@code journal} when given. A resumed
+     * job keeps the read mode it was started with. A gzip input is read
+     * sequentially, since a compressed file cannot be cut into byte ranges.
+     * A Parquet input is rewritten column-wise and starts over on resume.
+     * An unquoted plain-text input is pre-scanned into a {@link LineIndex}
+     * first, so the job reports its total from the start.
+     */
+    void processFileInternal(File inputFile, File outputFile, com.cadp.web.dto.JobRequest request,
+            com.cadp.web.dto.JobStatus job, int threadCount, JobJournal journal) throws Exception {
+        if (ParquetFileProcessor.isParquet(inputFile)) {
+            processParquet(inputFile, outputFile, request, job, threadCount);
+            return;
+        }
+        String readMode = journal != null ? journal.getMode() : null;
+        if (readMode == null) {
+            // Quoted records may span lines, so a byte range cannot be cut safely; those use the sequential reader
+            readMode = !request.isQuoted() && !Compression.isGzip(inputFile)
+                    && inputFile.length() >= parallelReadThresholdMb * 1024 * 1024
+                    ? JobJournal.MODE_RANGES
+                    : JobJournal.MODE_LINES;
+            if (journal != null) {
+                journal.setMode(readMode);
+            }
+        }
 
-                // Store result for retrieval
-                resultFiles.put(jobId, outputFile);
-                job.setResultToken(jobId);
+        job.setTotalBytes(inputFile.length());
+        // The index counts lines as the readers do; quoted records may span lines and gzip has to be inflated
+        LineIndex index = prescan && !request.isQuoted() && !Compression.isGzip(inputFile)
+                ? LineIndex.scan(inputFile)
+                : null;
+        if (index != null) {
+            job.setTotalLines(index.records());
+        }
+        if (JobJournal.MODE_RANGES.equals(readMode)) {
+            processRanges(inputFile, outputFile, request, job, threadCount, journal, index);
+            return;
+        }
+        FileInputStream file = new FileInputStream(inputFile);
+        long firstRecord = 0;
+        InputStream in;
+        try {
+            long[] resume = journal == null ? null : journal.lastCommit(0);
+            if (index != null && resume != null) {
+                // Seek close to the last checkpoint instead of reading every record already written
+                firstRecord = index.floorRecord(resume[0]);
+                long offset = index.offsetOf(firstRecord);
+                file.getChannel().position(offset);
+                job.addInputBytesRead(offset);
+            }
+            // Progress counts compressed bytes, which is what the file length measures
+            in = Compression.decompressIfGzip(new CountingInputStream(file, job));
+        } catch (IOException | RuntimeException e) {
+            // E.g. a corrupt gzip header; processLines only owns the stream once it is handed over
+            file.close();
+            throw e;
+        }
+        processLines(openRecords(new InputStreamReader(in, StandardCharsets.UTF_8), request.isQuoted()), outputFile,
+                request, job, threadCount, journal, firstRecord);
+    }
 
-            } catch (Exception e) {
-                job.setStatus("FAILED");
-                job.setErrorMessage(e.getMessage());
-                e.printStackTrace();
-            } finally {
-                try {
-                    Files.deleteIfExists(inputFile.toPath());
-                } catch (IOException ignored) {
-                }
+    // Adds the bytes read to the job's input counter, which drives the progress ETA
+    private static final class CountingInputStream extends java.io.FilterInputStream {
+        private final com.cadp.web.dto.JobStatus job;
+
+        CountingInputStream(InputStream in, com.cadp.web.dto.JobStatus job) {
+            super(in);
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                job.addInputBytesRead(1);
             }
-        }).start();
+            return b;
+        }
 
-        return jobId;
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                job.addInputBytesRead(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            job.addInputBytesRead(skipped);
+            return skipped;
+        }
     }
 
-    private void processFileInternal(File inputFile, File outputFile, String mode, List<Integer> columnIndices,
-            String policy,
-            String delimiter, boolean skipHeader, com.cadp.web.dto.JobStatus job, int threadCount) throws Exception {
+    /**
+     * Splits the file into line-aligned byte ranges that the workers map, parse,
+     * transform and write to segment files in parallel; the segments are then
+     * concatenated in order. Lines stay UTF-8 bytes throughout: only the target
+     * cells are copied out for the crypto call. With an {@code index} the
+     * ranges hold about the same number of records; it may be {@code null}.
+     */
+    void processRanges(File inputFile, File outputFile, com.cadp.web.dto.JobRequest request,
+            com.cadp.web.dto.JobStatus job, int threadCount, JobJournal journal, LineIndex index) throws Exception {
+        if (threadCount < 1)
+            threadCount = 4;
+
+        JobCrypto crypto = openCrypto(request, job, threadCount);
+        RangeFileProcessor processor = new RangeFileProcessor(jobScheduler.getWorkerPool(), threadCount, 1000,
+                request.isCompressOutput(), (lines, segment) -> {
+                    job.addInputBytesRead(lines.byteLength() + lines.size()); // Line terminators approximated
+                    long errors = writeChunkResults(segment, transformChunk(lines, request, crypto), job);
+                    crypto.recordStats();
+                    return errors;
+                });
+        try {
+            job.setTotalLines(processor.process(inputFile, outputFile, request.isSkipHeader(), journal, index));
+        } finally {
+            crypto.close();
+        }
+    }
+
+    /**
+     * Transforms the selected columns of a Parquet file. Each row group's
+     * target column chunks are decoded and sent to the crypto layer in chunks
+     * of 1000 values; all other chunks are copied without decoding. A row with
+     * a failed cell counts as an error and the cell is written as null.
+     */
+    void processParquet(File inputFile, File outputFile, com.cadp.web.dto.JobRequest request,
+            com.cadp.web.dto.JobStatus job, int threadCount) throws Exception {
+        if (threadCount < 1)
+            threadCount = 4;
+
+        JobCrypto crypto = openCrypto(request, job, threadCount);
+        int[] columns = crypto.columns();
+        ParquetFileProcessor processor = new ParquetFileProcessor(jobScheduler.getWorkerPool(), threadCount, 1000,
+                crypto::processColumn, (rows, errorRows, inputBytes, outputBytes, nanos) -> {
+                    job.addInputBytesRead(inputBytes);
+                    job.addProcessedLines(rows);
+                    job.addErrorCount(errorRows);
+                    crypto.recordStats();
+                    metrics.recordChunkWrite(nanos, rows, errorRows);
+                    recordBytes(job, outputBytes);
+                });
+        try {
+            job.setTotalLines(processor.process(inputFile, outputFile, columns));
+        } finally {
+            crypto.close();
+        }
+    }
+
+    // Physical lines, or RFC 4180 records that may span lines when quoted fields are enabled
+    static BufferedReader openRecords(Reader in, boolean quoted) {
+        return quoted ? new CsvRecordReader(in) : new BufferedReader(in);
+    }
+
+    /**
+     * Runs the reader -> workers -> writer pipeline over any record source; the
+     * reader is closed when done.
+     */
+    void processLines(BufferedReader input, File outputFile, com.cadp.web.dto.JobRequest request,
+            com.cadp.web.dto.JobStatus job, int threadCount)
+            throws Exception {
+        processLines(input, outputFile, request, job, threadCount, null);
+    }
+
+    /**
+     * Same as above with checkpoints in {@code journal} when given: the number
+     * of records behind the written output and its length. On resume the
+     * output is cut back to the last checkpoint and that many records are
+     * skipped without any crypto calls. Compressed output is written as gzip
+     * blocks compressed in parallel, cut at every checkpoint so the truncated
+     * output stays a valid gzip file.
+     */
+    void processLines(BufferedReader input, File outputFile, com.cadp.web.dto.JobRequest request,
+            com.cadp.web.dto.JobStatus job, int threadCount, JobJournal journal)
+            throws Exception {
+        processLines(input, outputFile, request, job, threadCount, journal, 0);
+    }
+
+    /**
+     * Same as above for an {@code input} already positioned at record
+     * {@code firstRecord}, which must not be past the last checkpoint.
+     */
+    void processLines(BufferedReader input, File outputFile, com.cadp.web.dto.JobRequest request,
+            com.cadp.web.dto.JobStatus job, int threadCount, JobJournal journal, long firstRecord)
+            throws Exception {
 
         if (threadCount < 1)
             threadCount = 4;
         int chunkSize = 1000;
 
-        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threadCount);
+        // Workers come from the scheduler's shared pool; the job's share was granted by the caller
+        java.util.concurrent.ExecutorService executor = jobScheduler.getWorkerPool();
+        JobCrypto crypto = openCrypto(request, job, threadCount);
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-                BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+        long[] resume = journal == null ? null : journal.lastCommit(0);
+        if (resume != null) {
+            try (java.nio.channels.FileChannel partial = java.nio.channels.FileChannel.open(outputFile.toPath(),
+                    java.nio.file.StandardOpenOption.WRITE)) {
+                partial.truncate(resume[1]);
+            }
+        }
+        long skipRecords = resume == null ? 0 : resume[0];
+        java.util.concurrent.atomic.AtomicLong recordsWritten = new java.util.concurrent.atomic.AtomicLong(skipRecords);
+        long[] bytesWritten = { resume == null ? 0 : resume[1] }; // Output length seen by the writer thread
+
+        try (BufferedReader reader = input;
+                FileOutputStream file = new FileOutputStream(outputFile, resume != null);
+                OutputStream sink = request.isCompressOutput() ? new GzipBlockOutputStream(file, true) : file;
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8))) {
 
             String line;
-            long lineNum = 0;
+            long lineNum = firstRecord;
+
+            boolean skipHeader = request.isSkipHeader();
+
+            // Reader (this thread) -> workers (split + crypto) -> ordered writer, bounded by maxInFlight chunks
+            ChunkPipeline pipeline = new ChunkPipeline(executor, jobScheduler.getWriterPool(), threadCount,
+                    threadCount * 2 + 2, chunk -> transformChunk(chunk, request, crypto),
+                    results -> {
+                        writeChunkResults(writer, results, job);
+                        crypto.recordStats();
+                        long length = file.getChannel().position();
+                        recordBytes(job, length - bytesWritten[0]);
+                        bytesWritten[0] = length;
+                        long records = recordsWritten.addAndGet(results.size());
+                        if (journal != null && journal.isDue(0)) {
+                            // writeChunkResults flushed the writer; force the bytes before recording them
+                            GzipBlockOutputStream.sync(sink);
+                            file.getChannel().force(false);
+                            // Only this writer thread adds to the job's counters, so the pair is consistent
+                            journal.commit(0, records, file.getChannel().position(), job.getProcessedLines(),
+                                    job.getErrorCount());
+                        }
+                    });
+            metrics.addPipeline(pipeline);
+            List<String> currentChunk = new ArrayList<>(chunkSize);
 
-            String actualDelimiter = delimiter;
-            if ("\\t".equals(delimiter)) {
-                actualDelimiter = "\t";
-            }
-            final String finalDelimiter = actualDelimiter;
+            try {
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
 
-            List<java.util.concurrent.Future<String>> currentChunkFutures = new ArrayList<>(chunkSize);
+                    if (lineNum < skipRecords) {
+                        lineNum++; // Already in the output before the restart
+                        continue;
+                    }
 
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
+                    if (skipHeader && lineNum == 0) {
+                        writer.write(line);
+                        writer.newLine();
+                        recordsWritten.incrementAndGet();
+                        lineNum++;
+                        continue;
+                    }
 
-                if (skipHeader && lineNum == 0) {
-                    writer.write(line);
-                    writer.newLine();
-                    lineNum++;
-                    continue;
-                }
+                    currentChunk.add(line);
 
-                final String currentLine = line;
-
-                currentChunkFutures.add(executor.submit(() -> {
-                    String[] parts = currentLine.split(finalDelimiter, -1);
-                    boolean hasError = false;
-                    for (int columnIndex : columnIndices) {
-                        if (parts.length > columnIndex) {
-                            try {
-                                String target = parts[columnIndex];
-                                String processed = target;
-                                if (target != null && !target.isEmpty()) {
-                                    if ("protect".equalsIgnoreCase(mode)) {
-                                        processed = cadpClient.protect(target, policy);
-                                    } else if ("reveal".equalsIgnoreCase(mode)) {
-                                        processed = cadpClient.reveal(target, policy);
-                                    }
-                                }
-                                parts[columnIndex] = processed;
-                            } catch (Exception e) {
-                                parts[columnIndex] = "ERROR";
-                                hasError = true;
-                            }
-                        }
+                    if (currentChunk.size() >= chunkSize) {
+                        pipeline.submit(currentChunk);
+                        currentChunk = new ArrayList<>(chunkSize);
                     }
-                    if (hasError)
-                        throw new RuntimeException("Processing Error");
-                    return String.join(finalDelimiter, parts);
-                }));
-
-                if (currentChunkFutures.size() >= chunkSize) {
-                    writeChunkResults(writer, currentChunkFutures, job);
-                    currentChunkFutures.clear();
+
+                    lineNum++;
                 }
 
-                lineNum++;
+                if (!currentChunk.isEmpty()) {
+                    pipeline.submit(currentChunk);
+                }
+                pipeline.finish();
+            } catch (Exception e) {
+                pipeline.abort(e);
+                throw e;
+            } finally {
+                metrics.removePipeline(pipeline);
             }
 
-            if (!currentChunkFutures.isEmpty()) {
-                writeChunkResults(writer, currentChunkFutures, job);
-                currentChunkFutures.clear();
+            job.setTotalLines(lineNum);
+        } finally {
+            crypto.close();
+        }
+    }
+
+    /**
+     * Crypto state of one job run on {@code grantedThreads} workers: its value
+     * cache and, when adaptive concurrency is on, a limiter that starts at the
+     * requested thread count and may grow up to the granted workers, or up to
+     * the in-flight cap when calls run on virtual threads.
+     */
+    JobCrypto openCrypto(com.cadp.web.dto.JobRequest request, com.cadp.web.dto.JobStatus job, int grantedThreads) {
+        CryptoCallExecutor callExecutor = jobScheduler.getCallExecutor();
+        AdaptiveLimiter limiter = null;
+        if (adaptiveConcurrency) {
+            int initial = request.getThreadCount() < 1 ? grantedThreads : request.getThreadCount();
+            limiter = new AdaptiveLimiter(initial,
+                    callExecutor != null ? Math.max(grantedThreads, callExecutor.getMaxInFlight()) : grantedThreads);
+        }
+        return new JobCrypto(cadpClient, request, ValueCache.forRequest(request, cacheMaxEntries), limiter,
+                callExecutor, job);
+    }
+
+    /**
+     * Locates the selected columns in a chunk of lines, sends each column's
+     * non-empty cells to the crypto layer as one batch, and splices the results
+     * back into the lines. Only target cells are materialized; the rest of each
+     * line is copied as-is. With quoted fields, cells are unquoted before the
+     * crypto call and re-quoted on output if they were quoted in the input or
+     * now need it. A line with a failed cell comes back as {@code null}.
+     */
+    List<String> transformChunk(List<String> lines, com.cadp.web.dto.JobRequest request, JobCrypto crypto) {
+        String delimiter = FieldScanner.unescape(request.getDelimiter());
+        boolean quoted = request.isQuoted();
+        int[] columns = crypto.columns();
+        if (columns.length == 0) {
+            return lines;
+        }
+
+        int lineCount = lines.size();
+        int width = columns.length;
+        // Cell (line i, selected column c) lives at i * width + c
+        int[] starts = new int[lineCount * width];
+        int[] ends = new int[lineCount * width];
+        String[] processedCells = new String[lineCount * width];
+        boolean[] failed = new boolean[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            FieldScanner.locate(lines.get(i), delimiter, quoted, columns, starts, ends, i * width);
+        }
+
+        for (int c = 0; c < width; c++) {
+            List<Integer> cells = new ArrayList<>(lineCount);
+            List<byte[]> values = new ArrayList<>(lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                int cell = i * width + c;
+                if (starts[cell] >= 0 && ends[cell] > starts[cell]) {
+                    String value = FieldScanner.value(lines.get(i), starts[cell], ends[cell], quoted);
+                    if (!value.isEmpty()) {
+                        cells.add(cell);
+                        values.add(value.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            if (values.isEmpty()) {
+                continue;
             }
 
-            job.setTotalLines(lineNum);
+            byte[][] processed = crypto.processColumn(values, columns[c]);
+            for (int k = 0; k < processed.length; k++) {
+                int cell = cells.get(k);
+                if (processed[k] == null) {
+                    failed[cell / width] = true;
+                } else {
+                    processedCells[cell] = new String(processed[k], StandardCharsets.UTF_8);
+                }
+            }
+        }
 
-        } finally {
-            executor.shutdown();
+        List<String> results = new ArrayList<>(lineCount);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            if (failed[i]) {
+                results.add(null);
+                continue;
+            }
+            String line = lines.get(i);
+            sb.setLength(0);
+            int copied = 0;
+            for (int c = 0; c < width; c++) {
+                int cell = i * width + c;
+                if (processedCells[cell] != null) {
+                    sb.append(line, copied, starts[cell]);
+                    if (quoted) {
+                        FieldScanner.appendQuotedIfNeeded(sb, processedCells[cell], delimiter,
+                                FieldScanner.isQuoted(line, starts[cell], ends[cell]));
+                    } else {
+                        sb.append(processedCells[cell]);
+                    }
+                    copied = ends[cell];
+                }
+            }
+            if (copied == 0) {
+                results.add(line); // Nothing replaced
+            } else {
+                sb.append(line, copied, line.length());
+                results.add(sb.toString());
+            }
         }
+        return results;
     }
 
-    private void writeChunkResults(BufferedWriter writer, List<java.util.concurrent.Future<String>> futures,
-            com.cadp.web.dto.JobStatus job)
+    void writeChunkResults(BufferedWriter writer, List<String> results, com.cadp.web.dto.JobStatus job)
             throws IOException {
+        long start = System.nanoTime();
         long errorsInChunk = 0;
         long processedInChunk = 0;
 
-        for (java.util.concurrent.Future<String> future : futures) {
+        for (String result : results) {
             processedInChunk++;
-            try {
-                String result = future.get();
+            if (result != null) {
                 writer.write(result);
-                writer.newLine();
-            } catch (Exception e) {
+            } else {
                 errorsInChunk++;
                 writer.write("ERROR_PROCESSING_LINE");
-                writer.newLine();
             }
+            writer.newLine();
         }
         writer.flush();
 
         if (job != null) {
-            synchronized (job) {
-                job.setProcessedLines(job.getProcessedLines() + processedInChunk);
-                job.setErrorCount(job.getErrorCount() + errorsInChunk);
+            job.addProcessedLines(processedInChunk);
+            job.addErrorCount(errorsInChunk);
+        }
+        metrics.recordChunkWrite(System.nanoTime() - start, processedInChunk, errorsInChunk);
+    }
+
+    private void recordBytes(com.cadp.web.dto.JobStatus job, long written) {
+        if (job != null) {
+            job.addProcessedBytes(written);
+        }
+        metrics.recordBytes(written);
+    }
+
+    private static final byte[] ERROR_LINE = "ERROR_PROCESSING_LINE".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Byte-level {@link #transformChunk(List, com.cadp.web.dto.JobRequest, JobCrypto)} for
+     * unquoted UTF-8 lines: the target cells' bytes go to the crypto layer
+     * as-is and every other byte is copied straight into the result chunk, so
+     * nothing is decoded to a String. Failed lines are marked failed.
+     */
+    LineChunk transformChunk(LineChunk lines, com.cadp.web.dto.JobRequest request, JobCrypto crypto) {
+        byte[] delimiter = FieldScanner.unescape(request.getDelimiter()).getBytes(StandardCharsets.UTF_8);
+        int[] columns = crypto.columns();
+        if (columns.length == 0) {
+            return lines;
+        }
+
+        byte[] data = lines.data();
+        int lineCount = lines.size();
+        int width = columns.length;
+        // Cell (line i, selected column c) lives at i * width + c
+        int[] starts = new int[lineCount * width];
+        int[] ends = new int[lineCount * width];
+        byte[][] processedCells = new byte[lineCount * width][];
+        boolean[] failed = new boolean[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            FieldScanner.locate(data, lines.start(i), lines.end(i), delimiter, columns, starts, ends, i * width);
+        }
+
+        for (int c = 0; c < width; c++) {
+            List<Integer> cells = new ArrayList<>(lineCount);
+            List<byte[]> values = new ArrayList<>(lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                int cell = i * width + c;
+                if (starts[cell] >= 0 && ends[cell] > starts[cell]) {
+                    cells.add(cell);
+                    values.add(java.util.Arrays.copyOfRange(data, starts[cell], ends[cell]));
+                }
+            }
+            if (values.isEmpty()) {
+                continue;
             }
+
+            byte[][] processed = crypto.processColumn(values, columns[c]);
+            for (int k = 0; k < processed.length; k++) {
+                int cell = cells.get(k);
+                if (processed[k] == null) {
+                    failed[cell / width] = true;
+                } else {
+                    processedCells[cell] = processed[k];
+                }
+            }
+        }
+
+        LineChunk results = new LineChunk(lineCount, lines.byteLength() + lines.byteLength() / 2);
+        for (int i = 0; i < lineCount; i++) {
+            if (failed[i]) {
+                results.addFailed();
+                continue;
+            }
+            results.beginLine();
+            int copied = lines.start(i);
+            for (int c = 0; c < width; c++) {
+                int cell = i * width + c;
+                if (processedCells[cell] != null) {
+                    results.append(data, copied, starts[cell] - copied);
+                    results.append(processedCells[cell], 0, processedCells[cell].length);
+                    copied = ends[cell];
+                }
+            }
+            results.append(data, copied, lines.end(i) - copied);
+            results.endLine();
+        }
+        return results;
+    }
+
+    // Returns the number of failed lines in the chunk
+    long writeChunkResults(OutputStream out, LineChunk results, com.cadp.web.dto.JobStatus job)
+            throws IOException {
+        long start = System.nanoTime();
+        results.writeTo(out, ERROR_LINE);
+
+        long errorsInChunk = 0;
+        long bytesInChunk = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.isFailed(i)) {
+                errorsInChunk++;
+                bytesInChunk += ERROR_LINE.length + 1;
+            } else {
+                bytesInChunk += results.end(i) - results.start(i) + 1;
+            }
+        }
+        if (job != null) {
+            job.addProcessedLines(results.size());
+            job.addErrorCount(errorsInChunk);
         }
+        metrics.recordChunkWrite(System.nanoTime() - start, results.size(), errorsInChunk);
+        recordBytes(job, bytesInChunk);
+        return errorsInChunk;
     }
 }
@@ -0,0 +1,174 @@
+package com.cadp.web.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip output compressed in independent blocks, like pigz.
+ * <p>
+ * Written bytes are cut into {@value #BLOCK_SIZE}-byte blocks and each block
+ * becomes a complete gzip member; concatenated members are a valid gzip file
+ * that any gunzip reads as one stream. Blocks are compressed on a shared pool
+ * of {@link #PARALLELISM} threads while the writer carries on, and written
+ * out in order, so compression keeps up with the pipeline.
+ * <p>
+ * {@link #flush()} writes whatever blocks are already compressed and does
+ * not cut the current block. {@link #sync()} ends the current block and
+ * waits for all of them, leaving the underlying stream at a member boundary:
+ * an output truncated there is still a valid gzip file, which is what
+ * checkpoints rely on.
+ */
+class GzipBlockOutputStream extends OutputStream {
+
+    static final int BLOCK_SIZE = 256 * 1024;
+    static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    // Separate from the crypto workers, which would otherwise wait on compression they cannot run
+    private static final ExecutorService COMPRESSORS = Executors.newFixedThreadPool(PARALLELISM, r -> {
+        Thread t = new Thread(r, "cadp-gzip");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final OutputStream out;
+    private final boolean parallel;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int length;
+    private boolean membersWritten;
+    private boolean closed;
+
+    /**
+     * @param parallel compress on the shared pool; otherwise on the calling
+     *                 thread, for callers that already write from many threads
+     */
+    GzipBlockOutputStream(OutputStream out, boolean parallel) {
+        this.out = out;
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length) {
+            endBlock();
+        }
+        block[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == block.length) {
+                endBlock();
+            }
+            int n = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeMember(await(pending.pollFirst()));
+        }
+        out.flush();
+    }
+
+    /**
+     * Ends the current block and writes every block, so the underlying stream
+     * holds complete gzip members only.
+     */
+    void sync() throws IOException {
+        if (length > 0) {
+            endBlock();
+        }
+        while (!pending.isEmpty()) {
+            writeMember(await(pending.pollFirst()));
+        }
+        out.flush();
+    }
+
+    /**
+     * {@link #sync()} for a gzip block stream, a plain flush for any other.
+     */
+    static void sync(OutputStream out) throws IOException {
+        if (out instanceof GzipBlockOutputStream) {
+            ((GzipBlockOutputStream) out).sync();
+        } else {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            sync();
+            if (!membersWritten) {
+                // gunzip rejects an empty file; an empty member is an empty gzip stream
+                writeMember(compress(block, 0));
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            out.close();
+        }
+    }
+
+    private void endBlock() throws IOException {
+        int len = length;
+        length = 0;
+        if (!parallel) {
+            writeMember(compress(block, len));
+            return;
+        }
+        byte[] data = block;
+        block = new byte[BLOCK_SIZE];
+        // Bound the blocks in memory; the oldest is the next one to write anyway
+        while (pending.size() >= PARALLELISM * 2) {
+            writeMember(await(pending.pollFirst()));
+        }
+        pending.addLast(COMPRESSORS.submit(() -> compress(data, len)));
+    }
+
+    private void writeMember(byte[] member) throws IOException {
+        out.write(member);
+        membersWritten = true;
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing output");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    static byte[] compress(byte[] data, int len) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(len / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, 64 * 1024)) {
+            gzip.write(data, 0, len);
+        }
+        return member.toByteArray();
+    }
+}
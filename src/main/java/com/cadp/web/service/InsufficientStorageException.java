@@ -0,0 +1,12 @@
+package com.cadp.web.service;
+
+/**
+ * A job refused by {@link JobRegistry#reserve} because the disk it would
+ * write to is too full; the API answers it with 507 Insufficient Storage.
+ */
+public class InsufficientStorageException extends RuntimeException {
+
+    public InsufficientStorageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,258 @@
+package com.cadp.web.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable working directories of uploaded-file jobs. Each job keeps its input,
+ * output, parameters ({@value #JOB_FILE}) and checkpoint journal
+ * ({@value #JOURNAL_FILE}) in one directory until it ends, so that jobs cut
+ * off by a restart can be found and resumed. The Key Manager host, port and
+ * user a job runs under are kept so that it resumes under the same ones; the
+ * registration token is never written. A job over a file
+ * already on the server keeps only its parameters and journal there; its
+ * input and output are referred to by absolute path.
+ */
+@Service
+public class JobCheckpointStore {
+
+    static final String JOB_FILE = "job.properties";
+    static final String JOURNAL_FILE = "checkpoint.journal";
+
+    // Empty means <java.io.tmpdir>/cadp-jobs
+    @Value("${cadp.jobs.dir:}")
+    private String jobsDir;
+
+    @Value("${cadp.jobs.checkpoint-interval-ms:1000}")
+    private long checkpointIntervalMillis;
+
+    /**
+     * A job found on disk without a completed or failed end.
+     */
+    static class StoredJob {
+        String jobId;
+        File dir;
+        File inputFile;
+        File outputFile;
+        File resultFile; // Where the output is renamed to once complete; null to leave it in place
+        String startTime;
+        com.cadp.web.dto.JobRequest request;
+        // Host, port and user of the job's client context, never the token; null for the configured one
+        com.cadp.web.dto.CadpConfig connection;
+    }
+
+    Path getJobsDir() {
+        return (jobsDir == null || jobsDir.isEmpty()) ? Paths.get(System.getProperty("java.io.tmpdir"), "cadp-jobs")
+                : Paths.get(jobsDir);
+    }
+
+    File createJobDir(String jobId) throws IOException {
+        return Files.createDirectories(getJobsDir().resolve(jobId)).toFile();
+    }
+
+    void save(StoredJob stored) throws IOException {
+        com.cadp.web.dto.JobRequest request = stored.request;
+        Properties props = new Properties();
+        props.setProperty("jobId", stored.jobId);
+        props.setProperty("input", pathIn(stored.dir, stored.inputFile));
+        props.setProperty("output", pathIn(stored.dir, stored.outputFile));
+        if (stored.resultFile != null) {
+            props.setProperty("result", stored.resultFile.getAbsolutePath());
+        }
+        props.setProperty("startTime", stored.startTime);
+        props.setProperty("filename", String.valueOf(request.getFilename()));
+        props.setProperty("mode", String.valueOf(request.getMode()));
+        props.setProperty("columns", request.getColumns().stream().map(String::valueOf)
+                .collect(Collectors.joining(",")));
+        props.setProperty("policy", String.valueOf(request.getPolicy()));
+        props.setProperty("transforms", ColumnTransforms.format(request.getTransforms()));
+        props.setProperty("delimiter", request.getDelimiter());
+        props.setProperty("skipHeader", String.valueOf(request.isSkipHeader()));
+        props.setProperty("quoted", String.valueOf(request.isQuoted()));
+        props.setProperty("threadCount", String.valueOf(request.getThreadCount()));
+        props.setProperty("priority", String.valueOf(request.getPriority()));
+        props.setProperty("cacheSize", String.valueOf(request.getCacheSize()));
+        props.setProperty("deterministicPolicy", String.valueOf(request.isDeterministicPolicy()));
+        props.setProperty("compressOutput", String.valueOf(request.isCompressOutput()));
+        ClientContext context = request.getClientContext();
+        if (context != null) {
+            setIfPresent(props, "kmsHost", context.getHost());
+            setIfPresent(props, "kmsPort", context.getPort());
+            setIfPresent(props, "userName", context.getUserName());
+        }
+
+        // Write then rename, so a crash never leaves a half-written file behind
+        File tmp = new File(stored.dir, JOB_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            props.store(writer, "CADP conversion job");
+        }
+        Files.move(tmp.toPath(), new File(stored.dir, JOB_FILE).toPath(),
+                java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Jobs whose directory still holds its parameters and input, oldest first.
+     */
+    List<StoredJob> findUnfinished() {
+        List<StoredJob> jobs = new ArrayList<>();
+        Path root = getJobsDir();
+        if (!Files.isDirectory(root)) {
+            return jobs;
+        }
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path dir : (Iterable<Path>) dirs::iterator) {
+                File jobFile = dir.resolve(JOB_FILE).toFile();
+                if (!jobFile.isFile()) {
+                    continue;
+                }
+                try {
+                    StoredJob stored = load(dir.toFile(), jobFile);
+                    if (stored.inputFile.isFile()) {
+                        jobs.add(stored);
+                    }
+                } catch (Exception e) {
+                    System.err.println("Skipping unreadable job directory " + dir + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to scan job directory " + root + ": " + e.getMessage());
+        }
+        jobs.sort(Comparator.comparing(stored -> stored.startTime));
+        return jobs;
+    }
+
+    private StoredJob load(File dir, File jobFile) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(jobFile), StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        com.cadp.web.dto.JobRequest request = new com.cadp.web.dto.JobRequest();
+        request.setFilename(props.getProperty("filename"));
+        request.setMode(props.getProperty("mode"));
+        String columns = props.getProperty("columns", "");
+        request.setColumns(columns.isEmpty() ? new ArrayList<>()
+                : Arrays.stream(columns.split(",")).map(Integer::valueOf).collect(Collectors.toList()));
+        request.setPolicy(props.getProperty("policy"));
+        request.setTransforms(ColumnTransforms.parse(props.getProperty("transforms")));
+        request.setDelimiter(props.getProperty("delimiter", ","));
+        request.setSkipHeader(Boolean.parseBoolean(props.getProperty("skipHeader")));
+        request.setQuoted(Boolean.parseBoolean(props.getProperty("quoted")));
+        request.setThreadCount(Integer.parseInt(props.getProperty("threadCount", "4")));
+        request.setPriority(Integer.parseInt(props.getProperty("priority", "0")));
+        request.setCacheSize(Integer.parseInt(props.getProperty("cacheSize", "0")));
+        request.setDeterministicPolicy(Boolean.parseBoolean(props.getProperty("deterministicPolicy")));
+        request.setCompressOutput(Boolean.parseBoolean(props.getProperty("compressOutput")));
+
+        StoredJob stored = new StoredJob();
+        stored.jobId = props.getProperty("jobId", dir.getName());
+        stored.dir = dir;
+        stored.inputFile = fileIn(dir, props.getProperty("input"));
+        stored.outputFile = fileIn(dir, props.getProperty("output"));
+        String result = props.getProperty("result");
+        stored.resultFile = result != null ? new File(result) : null;
+        stored.startTime = props.getProperty("startTime", "");
+        stored.request = request;
+        if (props.getProperty("kmsHost") != null) {
+            stored.connection = new com.cadp.web.dto.CadpConfig();
+            stored.connection.setHost(props.getProperty("kmsHost"));
+            stored.connection.setPort(props.getProperty("kmsPort"));
+            stored.connection.setUserName(props.getProperty("userName"));
+        }
+        return stored;
+    }
+
+    private static void setIfPresent(Properties props, String key, String value) {
+        if (value != null) {
+            props.setProperty(key, value);
+        }
+    }
+
+    // A file in the job directory by name, any other by absolute path
+    private static String pathIn(File dir, File file) {
+        return dir.equals(file.getParentFile()) ? file.getName() : file.getAbsolutePath();
+    }
+
+    private static File fileIn(File dir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(dir, path);
+    }
+
+    JobJournal openJournal(File dir) throws IOException {
+        return JobJournal.open(new File(dir, JOURNAL_FILE), checkpointIntervalMillis);
+    }
+
+    /**
+     * Ends a job's durable state: the input, parameters, journal and any
+     * leftover segments go, the output stays for download. The input of a
+     * job over a server-side file is left alone; its output only stays once
+     * renamed to the result.
+     */
+    void finish(StoredJob stored) {
+        File[] files = stored.dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.equals(stored.outputFile)) {
+                    deleteQuietly(f);
+                }
+            }
+        }
+        deleteTemporaryOutput(stored);
+    }
+
+    /**
+     * Removes an unfinished job's directory with everything in it.
+     */
+    void discard(StoredJob stored) {
+        File[] files = stored.dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                deleteQuietly(f);
+            }
+        }
+        deleteQuietly(stored.dir);
+        deleteTemporaryOutput(stored);
+    }
+
+    // Output written outside the job directory under a temporary name, with its range segments
+    private static void deleteTemporaryOutput(StoredJob stored) {
+        if (stored.resultFile == null) {
+            return;
+        }
+        String name = stored.outputFile.getName();
+        File[] files = stored.outputFile.getParentFile()
+                .listFiles((dir, f) -> f.equals(name) || f.startsWith(name + ".part"));
+        if (files != null) {
+            for (File f : files) {
+                deleteQuietly(f);
+            }
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.cadp.web.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Crypto calls of one job: the optional value cache, the optional adaptive
+ * concurrency limiter and the batch/per-cell fallback logic shared by the
+ * String and byte pipelines. Each target column has its own mode and policy
+ * (see {@link ColumnTransforms}). Created per job; {@link #close()} wipes the
+ * cache.
+ */
+final class JobCrypto {
+
+    // Mode and policy of one target column, and whether its results may be cached
+    private static final class Target {
+        final boolean protect;
+        final String policy;
+        final boolean cached;
+
+        Target(boolean protect, String policy, boolean cached) {
+            this.protect = protect;
+            this.policy = policy;
+            this.cached = cached;
+        }
+    }
+
+    private final CadpClient cadpClient;
+    private final ClientContext context;
+    private final Map<Integer, Target> targets = new HashMap<>();
+    private final int[] columns;
+    private final ValueCache cache;
+    private final AdaptiveLimiter limiter;
+    private final CryptoCallExecutor callExecutor;
+    private final com.cadp.web.dto.JobStatus job;
+
+    /**
+     * With a {@code callExecutor}, every value is its own call on a virtual
+     * thread instead of one batch call per column.
+     */
+    JobCrypto(CadpClient cadpClient, com.cadp.web.dto.JobRequest request, ValueCache cache,
+            AdaptiveLimiter limiter, CryptoCallExecutor callExecutor, com.cadp.web.dto.JobStatus job) {
+        this.cadpClient = cadpClient;
+        this.context = request.getClientContext() != null ? request.getClientContext()
+                : cadpClient.getDefaultContext();
+        List<com.cadp.web.dto.ColumnTransform> transforms = ColumnTransforms.resolve(request);
+        this.columns = new int[transforms.size()];
+        for (int i = 0; i < columns.length; i++) {
+            com.cadp.web.dto.ColumnTransform t = transforms.get(i);
+            boolean protect = "protect".equals(t.getMode());
+            columns[i] = t.getColumn();
+            targets.put(t.getColumn(), new Target(protect, t.getPolicy(),
+                    cache != null && ValueCache.isCacheable(protect, t.isDeterministic())));
+        }
+        this.cache = cache;
+        this.limiter = limiter;
+        this.callExecutor = callExecutor;
+        this.job = job;
+        publishLimit();
+    }
+
+    /**
+     * The columns to transform, in ascending order; empty when the job only
+     * copies its input.
+     */
+    int[] columns() {
+        return columns.clone();
+    }
+
+    /**
+     * Runs one column's cells through the crypto layer under that column's
+     * mode and policy, and returns the results in the same order, {@code null}
+     * for a cell that failed. With a cache,
+     * known values are answered locally and repeats within the batch are sent
+     * once. The rest go as one batch, retried cell by cell if the batch fails
+     * so that only the bad values are lost; with a call executor, each goes as
+     * its own call and all of them are in flight together.
+     */
+    byte[][] processColumn(List<byte[]> values, int column) {
+        Target target = targets.get(column);
+        if (target == null) {
+            throw new IllegalArgumentException("Column " + column + " is not a target of this job");
+        }
+        List<byte[]> misses = values;
+        List<ValueCache.Key> missKeys = null;
+        int[] missSlot = null; // Per value: index into misses, or -1 for a cache hit
+        byte[][] results = new byte[values.size()][];
+
+        if (target.cached) {
+            misses = new ArrayList<>();
+            missKeys = new ArrayList<>();
+            missSlot = new int[values.size()];
+            Map<ValueCache.Key, Integer> pending = new HashMap<>();
+            for (int k = 0; k < values.size(); k++) {
+                ValueCache.Key key = new ValueCache.Key(target.policy, column, values.get(k));
+                Integer slot = pending.get(key);
+                if (slot != null) {
+                    cache.recordHit();
+                    missSlot[k] = slot;
+                    continue;
+                }
+                byte[] cached = cache.get(key);
+                if (cached != null) {
+                    results[k] = cached;
+                    missSlot[k] = -1;
+                    continue;
+                }
+                missSlot[k] = misses.size();
+                pending.put(key, misses.size());
+                misses.add(values.get(k));
+                missKeys.add(key);
+            }
+        }
+
+        byte[][] processed = new byte[misses.size()][];
+        if (!misses.isEmpty() && callExecutor != null) {
+            try {
+                processed = callExecutor.invokeAll(misses, value -> single(target, value));
+            } catch (InterruptedException e) {
+                rethrowIfInterrupted(e);
+            }
+        } else if (!misses.isEmpty()) {
+            try {
+                batch(target, misses).toArray(processed);
+            } catch (Exception batchError) {
+                rethrowIfInterrupted(batchError);
+                // Isolate the bad values by retrying cell by cell
+                for (int m = 0; m < misses.size(); m++) {
+                    try {
+                        processed[m] = single(target, misses.get(m));
+                    } catch (Exception e) {
+                        rethrowIfInterrupted(e);
+                        processed[m] = null;
+                    }
+                }
+            }
+        }
+        if (!target.cached) {
+            return processed;
+        }
+
+        for (int m = 0; m < processed.length; m++) {
+            if (processed[m] != null) {
+                cache.put(missKeys.get(m), processed[m]);
+            }
+        }
+        for (int k = 0; k < results.length; k++) {
+            if (missSlot[k] >= 0) {
+                results[k] = processed[missSlot[k]];
+            }
+        }
+        return results;
+    }
+
+    // A cancelled job must stop, not turn every remaining cell into an error
+    private static void rethrowIfInterrupted(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new java.util.concurrent.CancellationException("Job cancelled");
+        }
+    }
+
+    private List<byte[]> batch(Target target, List<byte[]> values) throws Exception {
+        long start = begin();
+        boolean success = false;
+        try {
+            List<byte[]> result = target.protect ? cadpClient.protectRawBatch(context, values, target.policy)
+                    : cadpClient.revealRawBatch(context, values, target.policy);
+            success = true;
+            return result;
+        } finally {
+            end(start, success);
+        }
+    }
+
+    private byte[] single(Target target, byte[] value) throws Exception {
+        long start = begin();
+        boolean success = false;
+        try {
+            byte[] result = target.protect ? cadpClient.protectRaw(context, value, target.policy)
+                    : cadpClient.revealRaw(context, value, target.policy);
+            success = true;
+            return result;
+        } finally {
+            end(start, success);
+        }
+    }
+
+    private long begin() throws InterruptedException {
+        updatePaused();
+        if (limiter != null) {
+            limiter.acquire();
+        }
+        return System.nanoTime();
+    }
+
+    private void end(long start, boolean success) {
+        if (limiter != null && limiter.release(System.nanoTime() - start, success)) {
+            publishLimit();
+        }
+        updatePaused();
+    }
+
+    // PAUSED while the client's circuit breaker holds calls back, PROCESSING again once it closes
+    private void updatePaused() {
+        if (job == null) {
+            return;
+        }
+        boolean open = !"CLOSED".equals(cadpClient.getCircuitState());
+        String status = job.getStatus();
+        if (open ? !"PROCESSING".equals(status) : !"PAUSED".equals(status)) {
+            return; // Nothing to change; the common case takes no lock
+        }
+        synchronized (job) {
+            if (open && "PROCESSING".equals(job.getStatus())) {
+                job.setStatus("PAUSED");
+            } else if (!open && "PAUSED".equals(job.getStatus())) {
+                job.setStatus("PROCESSING");
+            }
+        }
+    }
+
+    private void publishLimit() {
+        if (limiter != null && job != null) {
+            job.setConcurrencyLimit(limiter.getLimit());
+            job.setLatencyMillis(limiter.getLatencyMillis());
+        }
+    }
+
+    void recordStats() {
+        if (cache != null && job != null) {
+            job.setCacheHits(cache.getHits());
+            job.setCacheMisses(cache.getMisses());
+        }
+    }
+
+    void close() {
+        if (cache != null) {
+            cache.wipe();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.cadp.web.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only checkpoint journal of one job, so that an interrupted
+ * conversion can continue where it stopped instead of starting over.
+ * <p>
+ * Output is written as one or more streams: a single stream for the
+ * sequential reader, or one segment per byte range for parallel reads. After
+ * a chunk has been written and forced to disk, a commit records for its
+ * stream the input position (a byte offset for ranges, the number of records
+ * consumed for the sequential reader), the durable output length, and the
+ * line and error counts so far. On resume each stream truncates its output to
+ * the last committed length and continues from the recorded position.
+ * <p>
+ * Records are text lines. A last line without its line break was torn by a
+ * crash: it is ignored, even where its prefix would parse, and cut off when
+ * the journal is reopened so that new records start on a line of their own.
+ * <pre>
+ * M lines|ranges            read mode the job was started with
+ * L start end [start end..]  byte range layout, in order, on one line
+ * C stream position outputLength lines errors
+ * </pre>
+ */
+final class JobJournal {
+
+    static final String MODE_LINES = "lines";
+    static final String MODE_RANGES = "ranges";
+
+    private final File file;
+    private final long intervalMillis;
+    private final FileOutputStream out;
+    private String mode;
+    private final List<long[]> layout = new ArrayList<>();
+    private final Map<Integer, long[]> commits = new HashMap<>();
+    private final Map<Integer, Long> lastCommitMillis = new HashMap<>();
+    private final long openedMillis = System.currentTimeMillis();
+
+    private JobJournal(File file, long intervalMillis) throws IOException {
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+        long complete = file.exists() ? load() : 0;
+        this.out = new FileOutputStream(file, true);
+        if (out.getChannel().size() > complete) {
+            out.getChannel().truncate(complete);
+        }
+    }
+
+    /**
+     * Opens the journal, reading back whatever an earlier run committed.
+     * {@link #isDue} spaces each stream's commits {@code intervalMillis} apart.
+     */
+    static JobJournal open(File file, long intervalMillis) throws IOException {
+        return new JobJournal(file, intervalMillis);
+    }
+
+    // Reads the complete records and returns their length in bytes
+    private long load() throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        int complete = data.length;
+        while (complete > 0 && data[complete - 1] != '\n') {
+            complete--; // A truncated number could still parse, e.g. a layout end of 123 for 12345
+        }
+        for (String line : new String(data, 0, complete, StandardCharsets.UTF_8).split("\n")) {
+            String[] parts = line.trim().split(" ");
+            try {
+                if (parts.length == 2 && "M".equals(parts[0])) {
+                    mode = parts[1];
+                } else if (parts.length >= 3 && parts.length % 2 == 1 && "L".equals(parts[0])) {
+                    List<long[]> ranges = new ArrayList<>();
+                    for (int i = 1; i < parts.length; i += 2) {
+                        ranges.add(new long[] { Long.parseLong(parts[i]), Long.parseLong(parts[i + 1]) });
+                    }
+                    layout.clear();
+                    layout.addAll(ranges);
+                } else if (parts.length == 6 && "C".equals(parts[0])) {
+                    commits.put(Integer.parseInt(parts[1]), new long[] { Long.parseLong(parts[2]),
+                            Long.parseLong(parts[3]), Long.parseLong(parts[4]), Long.parseLong(parts[5]) });
+                }
+            } catch (NumberFormatException ignored) {
+                // Corrupted record
+            }
+        }
+        return complete;
+    }
+
+    synchronized String getMode() {
+        return mode;
+    }
+
+    synchronized void setMode(String mode) throws IOException {
+        this.mode = mode;
+        append("M " + mode);
+    }
+
+    synchronized List<long[]> getLayout() {
+        return new ArrayList<>(layout);
+    }
+
+    // A single record, so a crash cannot leave a layout with only some of the ranges
+    synchronized void setLayout(List<long[]> ranges) throws IOException {
+        layout.clear();
+        StringBuilder sb = new StringBuilder("L");
+        for (long[] range : ranges) {
+            layout.add(range.clone());
+            sb.append(' ').append(range[0]).append(' ').append(range[1]);
+        }
+        if (!ranges.isEmpty()) {
+            append(sb.toString());
+        }
+    }
+
+    /**
+     * Last commit of a stream as {position, outputLength, lines, errors}, or
+     * {@code null} if it has none.
+     */
+    synchronized long[] lastCommit(int stream) {
+        long[] commit = commits.get(stream);
+        return commit == null ? null : commit.clone();
+    }
+
+    // Lines and errors committed over all streams, to restore the job counters
+    synchronized long[] totals() {
+        long lines = 0;
+        long errors = 0;
+        for (long[] commit : commits.values()) {
+            lines += commit[2];
+            errors += commit[3];
+        }
+        return new long[] { lines, errors };
+    }
+
+    /**
+     * True when the stream's checkpoint interval has passed. The caller then
+     * forces its output to disk and calls {@link #commit}.
+     */
+    synchronized boolean isDue(int stream) {
+        return System.currentTimeMillis() - lastCommitMillis.getOrDefault(stream, openedMillis) >= intervalMillis;
+    }
+
+    /**
+     * Records a checkpoint; the output up to {@code outputLength} must already
+     * be on disk.
+     */
+    synchronized void commit(int stream, long position, long outputLength, long lines, long errors)
+            throws IOException {
+        commits.put(stream, new long[] { position, outputLength, lines, errors });
+        append("C " + stream + " " + position + " " + outputLength + " " + lines + " " + errors);
+        lastCommitMillis.put(stream, System.currentTimeMillis());
+    }
+
+    private void append(String record) throws IOException {
+        out.write((record + "\n").getBytes(StandardCharsets.UTF_8));
+        out.getChannel().force(false);
+    }
+
+    synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.cadp.web.service;
+
+import com.cadp.web.dto.JobProgress;
+import com.cadp.web.dto.JobStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes job progress to server-sent-event subscribers.
+ * <p>
+ * One ticker thread takes a snapshot of each watched job every
+ * {@code interval-ms}, serializes it once and sends it to all of that job's
+ * subscribers, and only when it changed. However many dashboards are open, a
+ * job is read at most once per tick and the pipeline is never blocked: the
+ * counters behind the snapshot are lock-free. The stream ends after the job
+ * reaches a final state.
+ */
+@Service
+public class JobProgressService {
+
+    private static final double RATE_SMOOTHING = 0.3;
+
+    @Autowired
+    private FileProcessingService fileProcessingService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${cadp.progress.interval-ms:500}")
+    private long intervalMillis;
+
+    // Subscribers reconnect after this; EventSource does so automatically
+    @Value("${cadp.progress.timeout-ms:600000}")
+    private long timeoutMillis;
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService ticker;
+
+    // Subscribers of one job and the state needed to turn counters into rates
+    private static final class Subscription {
+        final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        long lastNanos = System.nanoTime();
+        long lastLines = -1;
+        long lastBytes;
+        long lastInput;
+        double rowRate;
+        double byteRate;
+        double inputRate;
+        String lastSent;
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cadp-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(50, intervalMillis);
+        ticker.scheduleAtFixedRate(this::tick, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.emitters.forEach(SseEmitter::complete);
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * Opens a progress stream for a job, starting with its current state.
+     * Returns {@code null} for an unknown job.
+     */
+    public SseEmitter subscribe(String jobId) {
+        JobStatus job = fileProcessingService.getJobStatus(jobId);
+        if (job == null) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        // Added inside compute, so tick cannot drop the subscription between lookup and add
+        Subscription subscription = subscriptions.compute(jobId, (id, existing) -> {
+            Subscription s = existing != null ? existing : new Subscription();
+            s.emitters.add(emitter);
+            return s;
+        });
+        Runnable remove = () -> subscription.emitters.remove(emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        try {
+            String json;
+            synchronized (subscription) {
+                json = objectMapper.writeValueAsString(snapshot(job, subscription, false));
+            }
+            send(emitter, json);
+            if (isFinal(job.getStatus())) {
+                emitter.complete();
+            }
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    private void tick() {
+        for (Map.Entry<String, Subscription> entry : subscriptions.entrySet()) {
+            Subscription subscription = entry.getValue();
+            if (subscription.emitters.isEmpty()) {
+                removeIfEmpty(entry.getKey(), subscription);
+                continue;
+            }
+            JobStatus job = fileProcessingService.getJobStatus(entry.getKey());
+            if (job == null) {
+                for (SseEmitter emitter : subscription.emitters) {
+                    emitter.complete();
+                    subscription.emitters.remove(emitter);
+                }
+                removeIfEmpty(entry.getKey(), subscription);
+                continue;
+            }
+            try {
+                boolean done = isFinal(job.getStatus());
+                String json;
+                synchronized (subscription) {
+                    json = objectMapper.writeValueAsString(snapshot(job, subscription, true));
+                    if (json.equals(subscription.lastSent) && !done) {
+                        continue;
+                    }
+                    subscription.lastSent = json;
+                }
+                for (SseEmitter emitter : subscription.emitters) {
+                    try {
+                        send(emitter, json);
+                        if (done) {
+                            emitter.complete();
+                            subscription.emitters.remove(emitter);
+                        }
+                    } catch (IOException | IllegalStateException e) {
+                        // Subscriber went away
+                        subscription.emitters.remove(emitter);
+                    }
+                }
+                if (done) {
+                    removeIfEmpty(entry.getKey(), subscription);
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to publish progress of job " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Drops the subscription unless someone subscribed meanwhile; they are served on the next tick
+    private void removeIfEmpty(String jobId, Subscription subscription) {
+        subscriptions.computeIfPresent(jobId, (id, s) -> s == subscription && s.emitters.isEmpty() ? null : s);
+    }
+
+    private static void send(SseEmitter emitter, String json) throws IOException {
+        emitter.send(SseEmitter.event().name("progress").data(json, MediaType.APPLICATION_JSON));
+    }
+
+    private static boolean isFinal(String status) {
+        return "COMPLETED".equals(status) || "FAILED".equals(status) || "INTERRUPTED".equals(status);
+    }
+
+    // Must hold the subscription's lock; updateRates advances its rate state
+    private static JobProgress snapshot(JobStatus job, Subscription subscription, boolean updateRates) {
+        long lines = job.getProcessedLines();
+        long bytes = job.getProcessedBytes();
+        long input = job.getInputBytesRead();
+        long now = System.nanoTime();
+        if (subscription.lastLines < 0) {
+            subscription.lastLines = lines;
+            subscription.lastBytes = bytes;
+            subscription.lastInput = input;
+            subscription.lastNanos = now;
+        } else if (updateRates && now > subscription.lastNanos) {
+            double seconds = (now - subscription.lastNanos) / 1e9;
+            subscription.rowRate = smooth(subscription.rowRate, (lines - subscription.lastLines) / seconds);
+            subscription.byteRate = smooth(subscription.byteRate, (bytes - subscription.lastBytes) / seconds);
+            subscription.inputRate = smooth(subscription.inputRate, (input - subscription.lastInput) / seconds);
+            subscription.lastLines = lines;
+            subscription.lastBytes = bytes;
+            subscription.lastInput = input;
+            subscription.lastNanos = now;
+        }
+
+        JobProgress progress = new JobProgress();
+        progress.setJobId(job.getJobId());
+        progress.setStatus(job.getStatus());
+        progress.setQueuePosition(job.getQueuePosition());
+        progress.setProcessedLines(lines);
+        progress.setTotalLines(job.getTotalLines());
+        progress.setErrorCount(job.getErrorCount());
+        progress.setConcurrencyLimit(job.getConcurrencyLimit());
+        progress.setLatencyMillis(round(job.getLatencyMillis()));
+        progress.setPercent(-1);
+        progress.setEtaSeconds(-1);
+        if ("COMPLETED".equals(job.getStatus())) {
+            progress.setPercent(100);
+            progress.setEtaSeconds(0);
+        } else if (job.getTotalLines() > 0) {
+            // Pre-scanned record count: rows are what the crypto calls are paid per
+            long remaining = Math.max(0, job.getTotalLines() - lines);
+            progress.setPercent((int) Math.min(100, lines * 100 / job.getTotalLines()));
+            if (subscription.rowRate > 0) {
+                progress.setEtaSeconds((long) Math.ceil(remaining / subscription.rowRate));
+            }
+        } else if (job.getTotalBytes() > 0) {
+            long remaining = Math.max(0, job.getTotalBytes() - input);
+            progress.setPercent((int) Math.min(100, input * 100 / job.getTotalBytes()));
+            if (subscription.inputRate > 0) {
+                progress.setEtaSeconds((long) Math.ceil(remaining / subscription.inputRate));
+            }
+        }
+        progress.setRowsPerSecond(Math.round(subscription.rowRate));
+        progress.setBytesPerSecond(Math.round(subscription.byteRate));
+        return progress;
+    }
+
+    private static double smooth(double previous, double sample) {
+        return previous == 0 ? sample : previous + (sample - previous) * RATE_SMOOTHING;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
@@ -0,0 +1,339 @@
+package com.cadp.web.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Bounded registry of jobs, their working directories and result files.
+ * <p>
+ * A finished job is kept for {@code ttl-minutes} so its result can be
+ * downloaded, then a background sweep forgets it and deletes its directory.
+ * Beyond {@code max-entries} jobs the oldest finished ones go first, and so
+ * do they whenever the output volume drops under {@code min-free-disk-mb}.
+ * New jobs are only admitted while their expected output, on top of what
+ * running jobs have reserved, leaves that much space free. A streaming job
+ * whose data has not started to arrive within {@code stream-timeout-minutes}
+ * is dropped like an expired one, and may be dropped early when there are
+ * too many jobs. The sweep also deletes upload directories left behind by
+ * earlier runs.
+ */
+@Service
+public class JobRegistry {
+
+    static final String UPLOAD_DIR_PREFIX = "cadp_upload";
+
+    @Autowired
+    private JobCheckpointStore checkpointStore;
+
+    @Value("${cadp.jobs.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${cadp.jobs.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${cadp.jobs.min-free-disk-mb:1024}")
+    private long minFreeDiskMb;
+
+    @Value("${cadp.jobs.sweep-interval-ms:60000}")
+    private long sweepIntervalMillis;
+
+    @Value("${cadp.jobs.stream-timeout-minutes:10}")
+    private long streamTimeoutMinutes;
+
+    private static final class Entry {
+        final com.cadp.web.dto.JobStatus status;
+        volatile File dir;
+        volatile File result;
+        volatile long finishedAt; // 0 while the job is not finished
+        com.cadp.web.dto.JobRequest pendingStream; // Streaming job still waiting for its data; guarded by this
+        long pendingUntil; // Guarded by this
+
+        Entry(com.cadp.web.dto.JobStatus status) {
+            this.status = status;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Expected output bytes of admitted jobs that have not finished yet
+    private final Map<String, Long> reservations = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cadp-job-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, sweepIntervalMillis);
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    public com.cadp.web.dto.JobStatus get(String jobId) {
+        Entry entry = entries.get(jobId);
+        return entry != null ? entry.status : null;
+    }
+
+    void add(com.cadp.web.dto.JobStatus job) {
+        entries.put(job.getJobId(), new Entry(job));
+        evictOverflow();
+    }
+
+    /**
+     * Forgets a job without touching its files; the caller owns them.
+     */
+    com.cadp.web.dto.JobStatus remove(String jobId) {
+        reservations.remove(jobId);
+        Entry entry = entries.remove(jobId);
+        return entry != null ? entry.status : null;
+    }
+
+    // Directory deleted with the job when it expires
+    void setDir(String jobId, File dir) {
+        Entry entry = entries.get(jobId);
+        if (entry != null) {
+            entry.dir = dir;
+        }
+    }
+
+    void setResult(String jobId, File result) {
+        Entry entry = entries.get(jobId);
+        if (entry != null) {
+            entry.result = result;
+        }
+    }
+
+    public File getResult(String jobId) {
+        Entry entry = entries.get(jobId);
+        return entry != null ? entry.result : null;
+    }
+
+    /**
+     * Parks the parameters of a streaming job until its data arrives, for at
+     * most {@code stream-timeout-minutes}.
+     */
+    void setPendingStream(String jobId, com.cadp.web.dto.JobRequest request) {
+        Entry entry = entries.get(jobId);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.pendingStream = request;
+                entry.pendingUntil = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(streamTimeoutMinutes);
+            }
+        }
+    }
+
+    /**
+     * The parameters of a streaming job whose data is arriving, or
+     * {@code null} when it is unknown, expired or already started.
+     */
+    com.cadp.web.dto.JobRequest takePendingStream(String jobId) {
+        Entry entry = entries.get(jobId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            com.cadp.web.dto.JobRequest request = entry.pendingStream;
+            entry.pendingStream = null;
+            return request;
+        }
+    }
+
+    /**
+     * Starts the job's TTL and releases its disk reservation.
+     */
+    void finished(String jobId) {
+        reservations.remove(jobId);
+        Entry entry = entries.get(jobId);
+        if (entry != null) {
+            entry.finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Admits a job that will write about {@code expectedBytes} under
+     * {@code dir}. Finished results are evicted early if that makes room;
+     * otherwise the job is rejected with an {@link InsufficientStorageException}.
+     */
+    synchronized void reserve(String jobId, Path dir, long expectedBytes) {
+        reservations.remove(jobId);
+        long reserved = reservations.values().stream().mapToLong(Long::longValue).sum();
+        long needed = minFreeDiskMb * 1024 * 1024 + reserved + expectedBytes;
+        long usable = usableSpace(dir);
+        while (usable < needed && evictOldestFinished("low disk space")) {
+            usable = usableSpace(dir);
+        }
+        if (usable < needed) {
+            throw new InsufficientStorageException("Not enough free disk space for this job: " + (usable >> 20)
+                    + " MB free, " + (needed >> 20) + " MB needed");
+        }
+        reservations.put(jobId, expectedBytes);
+    }
+
+    void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            long ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                long finishedAt = e.getValue().finishedAt;
+                if (finishedAt > 0 && now - finishedAt >= ttlMillis) {
+                    evict(e.getKey(), "expired");
+                } else if (abandon(e.getValue(), now)) {
+                    evict(e.getKey(), "no stream data received");
+                }
+            }
+            evictOverflow();
+            Path jobsDir = checkpointStore.getJobsDir();
+            while (usableSpace(jobsDir) < minFreeDiskMb * 1024 * 1024 && evictOldestFinished("low disk space")) {
+                // Keep going until there is room or nothing finished is left
+            }
+            deleteOrphans(now - ttlMillis);
+        } catch (Exception e) {
+            System.err.println("Job sweep failed: " + e.getMessage());
+        }
+    }
+
+    private void evictOverflow() {
+        while (entries.size() > Math.max(1, maxEntries)
+                && (evictOldestFinished("too many jobs") || evictOldestPendingStream())) {
+            // Running and queued jobs are never evicted
+        }
+    }
+
+    // Streaming jobs without data hold no work, only an entry; the oldest goes when finished ones run out
+    private boolean evictOldestPendingStream() {
+        Entry oldest = null;
+        String oldestId = null;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            synchronized (entry) {
+                if (entry.pendingStream != null && (oldest == null || entry.pendingUntil < oldest.pendingUntil)) {
+                    oldest = entry;
+                    oldestId = e.getKey();
+                }
+            }
+        }
+        return oldest != null && abandon(oldest, Long.MAX_VALUE) && evict(oldestId, "too many jobs");
+    }
+
+    // Fails a streaming job that never got its data by now; false if it has started or is not a stream
+    private static boolean abandon(Entry entry, long now) {
+        synchronized (entry) {
+            if (entry.pendingStream == null || now < entry.pendingUntil) {
+                return false;
+            }
+            entry.pendingStream = null;
+        }
+        entry.status.setStatus("FAILED");
+        entry.status.setErrorMessage("No stream data received");
+        return true;
+    }
+
+    private boolean evictOldestFinished(String reason) {
+        String oldest = null;
+        long oldestAt = Long.MAX_VALUE;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            long finishedAt = e.getValue().finishedAt;
+            if (finishedAt > 0 && finishedAt < oldestAt) {
+                oldest = e.getKey();
+                oldestAt = finishedAt;
+            }
+        }
+        return oldest != null && evict(oldest, reason);
+    }
+
+    private boolean evict(String jobId, String reason) {
+        reservations.remove(jobId);
+        Entry entry = entries.remove(jobId);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.dir != null) {
+            deleteRecursively(entry.dir.toPath());
+        }
+        System.out.println("Evicted job " + jobId + " (" + reason + ")");
+        return true;
+    }
+
+    // Upload directories and finished job directories no job refers to, e.g. from before a restart
+    private void deleteOrphans(long olderThan) {
+        Set<Path> inUse = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            if (entry.dir != null) {
+                inUse.add(entry.dir.toPath().toAbsolutePath());
+            }
+        }
+        Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+        deleteOrphans(tmp, inUse, olderThan, dir -> dir.getFileName().toString().startsWith(UPLOAD_DIR_PREFIX));
+        // Directories with job parameters still belong to unfinished jobs
+        deleteOrphans(checkpointStore.getJobsDir(), inUse, olderThan,
+                dir -> !Files.exists(dir.resolve(JobCheckpointStore.JOB_FILE)));
+    }
+
+    private void deleteOrphans(Path parent, Set<Path> inUse, long olderThan,
+            java.util.function.Predicate<Path> candidate) {
+        if (!Files.isDirectory(parent)) {
+            return;
+        }
+        try (Stream<Path> children = Files.list(parent)) {
+            children.filter(Files::isDirectory)
+                    .filter(dir -> !inUse.contains(dir.toAbsolutePath()))
+                    .filter(candidate)
+                    .filter(dir -> dir.toFile().lastModified() < olderThan)
+                    .forEach(dir -> {
+                        System.out.println("Deleting orphaned job directory " + dir);
+                        deleteRecursively(dir);
+                    });
+        } catch (IOException e) {
+            System.err.println("Failed to scan " + parent + ": " + e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.err.println("Failed to delete " + path + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + dir + ": " + e.getMessage());
+        }
+    }
+
+    // Usable space of the volume holding path, which may not exist yet
+    private static long usableSpace(Path path) {
+        Path existing = path.toAbsolutePath();
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        return existing != null ? existing.toFile().getUsableSpace() : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,220 @@
+package com.cadp.web.service;
+
+import com.cadp.web.dto.JobStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs conversion jobs under one global concurrency budget.
+ * <p>
+ * Jobs wait in a priority queue (higher priority first, FIFO within a priority)
+ * and at most {@code max-concurrent-jobs} run at once. All jobs share one
+ * worker pool of {@code worker-threads} threads; each running job gets at most
+ * {@code worker-threads / max-concurrent-jobs} of them, so concurrent uploads
+ * can never oversubscribe the box whatever thread count the client asks for.
+ * The ordered writer of each running job's pipeline comes from a pool of
+ * {@code max-concurrent-jobs} threads, also owned here.
+ */
+@Service
+public class JobScheduler {
+
+    private static final long ADMISSION_POLL_MILLIS = 500;
+
+    @Value("${cadp.scheduler.worker-threads:32}")
+    private int workerThreads;
+
+    @Value("${cadp.scheduler.max-concurrent-jobs:4}")
+    private int maxConcurrentJobs;
+
+    // Crypto calls on virtual threads (Java 21+), at most max-in-flight at once across all jobs
+    @Value("${cadp.crypto.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Value("${cadp.crypto.max-in-flight:1000}")
+    private int maxCallsInFlight;
+
+    private ThreadPoolExecutor jobExecutor;
+    private ExecutorService workerPool;
+    private ExecutorService writerPool;
+    private CryptoCallExecutor callExecutor;
+    private final AtomicLong submitSequence = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (workerThreads < 1)
+            workerThreads = 1;
+        if (maxConcurrentJobs < 1)
+            maxConcurrentJobs = 1;
+
+        jobExecutor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), namedThreads("cadp-job-"));
+        workerPool = Executors.newFixedThreadPool(workerThreads, namedThreads("cadp-worker-"));
+        // One pipeline writer per running job
+        writerPool = Executors.newFixedThreadPool(maxConcurrentJobs, namedThreads("cadp-writer-"));
+        System.out.println("Job scheduler started. Worker threads: " + workerThreads + ", Max concurrent jobs: "
+                + maxConcurrentJobs + ", Threads per job: " + getThreadsPerJob());
+        if (virtualThreads) {
+            callExecutor = CryptoCallExecutor.virtual(maxCallsInFlight);
+            if (callExecutor != null) {
+                System.out.println("Crypto calls run on virtual threads. Max in flight: " + maxCallsInFlight);
+            } else {
+                System.err.println("Virtual threads need Java 21 or later (running " + Runtime.version()
+                        + "); crypto calls stay on the worker threads.");
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        workerPool.shutdownNow();
+        writerPool.shutdownNow();
+        if (callExecutor != null) {
+            callExecutor.shutdown();
+        }
+    }
+
+    // True once the application is stopping; jobs cut off now should stay resumable
+    public boolean isShuttingDown() {
+        return jobExecutor.isShutdown();
+    }
+
+    /**
+     * Queues a job. Its status becomes QUEUED until a job slot frees up.
+     */
+    public void submit(JobStatus job, int priority, Runnable task) {
+        job.setStatus("QUEUED");
+        jobExecutor.execute(new QueuedJob(job, priority, submitSequence.getAndIncrement(), task));
+        refreshQueuePositions();
+    }
+
+    /**
+     * Runs a job on the calling thread once it is admitted, e.g. a streaming
+     * upload that must be consumed by the request thread. A job slot is held
+     * for the whole run so the job counts against max-concurrent-jobs. The
+     * wait for the slot ends with a {@link RejectedExecutionException} when
+     * the scheduler shuts down, which drops queued jobs without running them.
+     */
+    public void runInline(JobStatus job, int priority, Runnable task) throws InterruptedException {
+        CountDownLatch admitted = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        submit(job, priority, () -> {
+            admitted.countDown();
+            try {
+                // Returns at once if the caller gave up before the slot came
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            while (!admitted.await(ADMISSION_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (isShuttingDown()) {
+                    throw new RejectedExecutionException("Job scheduler is shutting down");
+                }
+            }
+            task.run();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Worker threads a job may use: the requested count capped at its fair share.
+     */
+    public int grantThreads(int requested) {
+        if (requested < 1)
+            return getThreadsPerJob();
+        return Math.min(requested, getThreadsPerJob());
+    }
+
+    public ExecutorService getWorkerPool() {
+        return workerPool;
+    }
+
+    // Runs the ordered writer of a job's chunk pipeline
+    ExecutorService getWriterPool() {
+        return writerPool;
+    }
+
+    // Null unless crypto calls run on virtual threads
+    CryptoCallExecutor getCallExecutor() {
+        return callExecutor;
+    }
+
+    public int getCryptoCallsInFlight() {
+        return callExecutor != null ? callExecutor.getInFlight() : 0;
+    }
+
+    public int getThreadsPerJob() {
+        return Math.max(1, workerThreads / maxConcurrentJobs);
+    }
+
+    public int getQueuedJobs() {
+        return jobExecutor.getQueue().size();
+    }
+
+    public int getRunningJobs() {
+        return jobExecutor.getActiveCount();
+    }
+
+    private void refreshQueuePositions() {
+        Object[] queued = jobExecutor.getQueue().toArray();
+        Arrays.sort(queued);
+        for (int i = 0; i < queued.length; i++) {
+            ((QueuedJob) queued[i]).job.setQueuePosition(i + 1);
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private final class QueuedJob implements Runnable, Comparable<QueuedJob> {
+        private final JobStatus job;
+        private final int priority;
+        private final long sequence;
+        private final Runnable task;
+
+        QueuedJob(JobStatus job, int priority, long sequence, Runnable task) {
+            this.job = job;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            job.setQueuePosition(0);
+            refreshQueuePositions();
+            task.run();
+        }
+
+        @Override
+        public int compareTo(QueuedJob other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.cadp.web.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A chunk of lines kept as raw UTF-8 bytes in one growable buffer, with the
+ * start/end offset of each line. Used by the byte-level pipeline so that a
+ * chunk costs a single allocation and untouched bytes are never decoded.
+ * A line marked failed has no bytes and is written as an error marker.
+ */
+final class LineChunk {
+
+    static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private byte[] data;
+    private int length;
+    private int[] starts;
+    private int[] ends;
+    private int count;
+
+    LineChunk(int expectedLines, int expectedBytes) {
+        data = new byte[Math.max(16, expectedBytes)];
+        starts = new int[Math.max(1, expectedLines)];
+        ends = new int[starts.length];
+    }
+
+    int size() {
+        return count;
+    }
+
+    int byteLength() {
+        return length;
+    }
+
+    byte[] data() {
+        return data;
+    }
+
+    int start(int line) {
+        return starts[line];
+    }
+
+    int end(int line) {
+        return ends[line];
+    }
+
+    boolean isFailed(int line) {
+        return starts[line] < 0;
+    }
+
+    /**
+     * Adds {@code len} bytes of {@code src} from {@code off} as one line.
+     */
+    void addLine(byte[] src, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(src, off, data, length, len);
+        commit(length, length + len);
+    }
+
+    // Builds an output line piecewise: beginLine(), append()..., endLine()
+
+    void beginLine() {
+        ensureLines();
+        starts[count] = length;
+    }
+
+    void append(byte[] src, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(src, off, data, length, len);
+        length += len;
+    }
+
+    void endLine() {
+        ends[count++] = length;
+    }
+
+    void addFailed() {
+        ensureLines();
+        starts[count] = -1;
+        ends[count++] = -1;
+    }
+
+    void clear() {
+        count = 0;
+        length = 0;
+    }
+
+    /**
+     * Writes every line followed by the platform line separator; failed lines
+     * are written as {@code errorMarker}.
+     */
+    void writeTo(OutputStream out, byte[] errorMarker) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (isFailed(i)) {
+                out.write(errorMarker);
+            } else {
+                out.write(data, starts[i], ends[i] - starts[i]);
+            }
+            out.write(NEWLINE);
+        }
+    }
+
+    private void commit(int start, int end) {
+        ensureLines();
+        starts[count] = start;
+        ends[count++] = end;
+        length = end;
+    }
+
+    private void ensureLines() {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.cadp.web.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sparse index of the records in a text file, built by one pass over its
+ * bytes before the job starts.
+ * <p>
+ * A record is a non-blank line, as the pipelines count them: a line whose
+ * bytes are not all at or below {@code ' '}. Lines end the way
+ * {@link java.io.BufferedReader#readLine} ends them, at {@code '\n'},
+ * {@code '\r'} or both; taking each of the two as a break of its own only
+ * adds empty lines between a CR and its LF, which are never records. The
+ * scan reads the file through a large direct buffer and never decodes it;
+ * once a line has shown a non-blank byte, the rest of it is skipped eight
+ * bytes at a time looking for the next break. Every {@link #STRIDE}-th
+ * record's start offset is kept, which gives the total up front for progress
+ * and ETA, line-aligned split points for parallel ranges, and a place to seek
+ * to on resume.
+ */
+final class LineIndex {
+
+    static final int STRIDE = 4096;
+    private static final int BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+    private static final long RETURNS = 0x0d0d0d0d0d0d0d0dL;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private final long records;
+    private final long[] offsets; // offsets[k]: start of record k * STRIDE
+
+    private LineIndex(long records, long[] offsets) {
+        this.records = records;
+        this.offsets = offsets;
+    }
+
+    static LineIndex scan(File file) throws IOException {
+        long records = 0;
+        long[] offsets = new long[64];
+        int entries = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long base = 0; // File offset of buffer position 0
+            long lineStart = 0;
+            boolean blank = true; // No non-blank byte in the current line yet
+            int n;
+            while ((n = channel.read(buffer.clear())) > 0) {
+                int p = 0;
+                while (p < n) {
+                    if (blank) {
+                        byte b = buffer.get(p);
+                        if (b == '\n' || b == '\r') {
+                            lineStart = base + p + 1;
+                        } else if ((b & 0xff) > ' ') {
+                            blank = false;
+                            if (records % STRIDE == 0) {
+                                if (entries == offsets.length) {
+                                    offsets = Arrays.copyOf(offsets, entries * 2);
+                                }
+                                offsets[entries++] = lineStart;
+                            }
+                            records++;
+                        }
+                        p++;
+                        continue;
+                    }
+                    // Inside a record: only the next line break matters
+                    p = lineBreak(buffer, p, n);
+                    if (p < n) {
+                        blank = true;
+                        lineStart = base + p + 1;
+                        p++;
+                    }
+                }
+                base += n;
+            }
+        }
+        return new LineIndex(records, Arrays.copyOf(offsets, entries));
+    }
+
+    /**
+     * Index of the first {@code '\n'} or {@code '\r'} in {@code buffer}
+     * between {@code from} and {@code to}, or {@code to} if there is none;
+     * eight bytes at a time through a little-endian buffer.
+     */
+    static int lineBreak(ByteBuffer buffer, int from, int to) {
+        int p = from;
+        while (p + 8 <= to) {
+            long word = buffer.getLong(p);
+            long lf = word ^ NEWLINES;
+            long cr = word ^ RETURNS;
+            // The lowest flagged byte is always a real match
+            long found = ((lf - ONES) & ~lf | (cr - ONES) & ~cr) & HIGHS;
+            if (found != 0) {
+                return p + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            p += 8;
+        }
+        while (p < to) {
+            byte b = buffer.get(p);
+            if (b == '\n' || b == '\r') {
+                return p;
+            }
+            p++;
+        }
+        return to;
+    }
+
+    /**
+     * Non-blank lines in the file, a header included.
+     */
+    long records() {
+        return records;
+    }
+
+    /**
+     * The last indexed record at or before {@code record}.
+     */
+    long floorRecord(long record) {
+        if (offsets.length == 0 || record <= 0) {
+            return 0;
+        }
+        return Math.min(record / STRIDE, offsets.length - 1) * (long) STRIDE;
+    }
+
+    /**
+     * Byte offset where an indexed record's line starts; the record must be
+     * one returned by {@link #floorRecord}.
+     */
+    long offsetOf(long indexedRecord) {
+        if (offsets.length == 0) {
+            return 0;
+        }
+        return offsets[(int) (indexedRecord / STRIDE)];
+    }
+
+    /**
+     * Line-aligned offsets that cut the file into {@code parts} ranges with
+     * about the same number of records, without 0 or the file end. Fewer
+     * are returned when there are not enough indexed records to go round.
+     */
+    long[] splitPoints(int parts) {
+        long[] points = new long[Math.max(0, parts - 1)];
+        int count = 0;
+        for (int k = 1; k < parts; k++) {
+            int entry = (int) ((long) offsets.length * k / parts);
+            long offset = entry < offsets.length ? offsets[entry] : 0;
+            if (offset > 0 && (count == 0 || offset > points[count - 1])) {
+                points[count++] = offset;
+            }
+        }
+        return Arrays.copyOf(points, count);
+    }
+}
@@ -0,0 +1,477 @@
+package com.cadp.web.service;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.CodecFactory;
+import org.apache.parquet.hadoop.ColumnChunkPageWriteStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Column-targeted processing of Parquet files.
+ * <p>
+ * The output keeps the input's schema and row groups. In every row group only
+ * the chunks of the selected columns are read, decoded, sent to the crypto
+ * layer and encoded again with the chunk's original codec; every other column
+ * chunk is copied byte for byte, without decompressing it. Selected columns
+ * must be top-level, non-repeated BINARY (string) columns, since protect and
+ * reveal change the length of a value.
+ * <p>
+ * A selected chunk is held in memory while it is transformed, in batches of
+ * {@code chunkSize} values spread over {@code workerCount} workers. A cell
+ * that fails is written as null, so the column must be optional. Parquet
+ * files cannot be appended to, so an interrupted job starts over.
+ */
+class ParquetFileProcessor {
+
+    /**
+     * Transforms one batch of a column's values, returning {@code null} for a
+     * value that failed.
+     */
+    interface ColumnHandler {
+        byte[][] transform(List<byte[]> values, int column);
+    }
+
+    /**
+     * Called after each row group with the rows written, the rows with a
+     * failed cell and the input and output bytes of the group.
+     */
+    interface RowGroupListener {
+        void rowGroupWritten(long rows, long errorRows, long inputBytes, long outputBytes, long nanos);
+    }
+
+    static final String SUFFIX = ".parquet";
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    private final ExecutorService executor;
+    private final int workerCount;
+    private final int chunkSize;
+    private final ColumnHandler handler;
+    private final RowGroupListener listener;
+
+    ParquetFileProcessor(ExecutorService executor, int workerCount, int chunkSize, ColumnHandler handler,
+            RowGroupListener listener) {
+        this.executor = executor;
+        this.workerCount = Math.max(1, workerCount);
+        this.chunkSize = chunkSize;
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    static boolean isParquet(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return startsWithMagic(in);
+        }
+    }
+
+    static boolean startsWithMagic(InputStream in) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        return in.readNBytes(head, 0, head.length) == head.length && Arrays.equals(head, MAGIC);
+    }
+
+    static boolean hasParquetName(String filename) {
+        return filename != null && filename.toLowerCase().endsWith(SUFFIX);
+    }
+
+    /**
+     * Column names and types from the footer at the end of {@code tail}, the
+     * last bytes of a Parquet file: what the preview shows instead of rows.
+     */
+    static List<List<String>> previewSchema(byte[] tail) throws IOException {
+        int n = tail.length;
+        if (n < 12 || !Arrays.equals(Arrays.copyOfRange(tail, n - 4, n), MAGIC)) {
+            throw new IOException("Not a Parquet file");
+        }
+        int footerLength = (tail[n - 8] & 0xff) | (tail[n - 7] & 0xff) << 8 | (tail[n - 6] & 0xff) << 16
+                | (tail[n - 5] & 0xff) << 24;
+        if (footerLength < 0 || footerLength > n - 8) {
+            throw new IOException("Parquet footer too large to preview (" + footerLength + " bytes)");
+        }
+        ParquetMetadata footer = new ParquetMetadataConverter().readParquetMetadata(
+                new ByteArrayInputStream(tail, n - 8 - footerLength, footerLength),
+                ParquetMetadataConverter.NO_FILTER);
+        List<String> names = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        for (ColumnDescriptor column : footer.getFileMetaData().getSchema().getColumns()) {
+            names.add(String.join(".", column.getPath()));
+            PrimitiveType type = column.getPrimitiveType();
+            types.add(type.getLogicalTypeAnnotation() != null
+                    ? type.getPrimitiveTypeName() + " (" + type.getLogicalTypeAnnotation() + ")"
+                    : type.getPrimitiveTypeName().toString());
+        }
+        List<List<String>> rows = new ArrayList<>();
+        rows.add(names);
+        rows.add(types);
+        return rows;
+    }
+
+    /**
+     * {@link #previewSchema(byte[])} of a whole file, reading only its footer.
+     */
+    static List<List<String>> previewSchema(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length < 12) {
+                throw new IOException("Not a Parquet file");
+            }
+            in.seek(length - 8);
+            int footerLength = Integer.reverseBytes(in.readInt());
+            if (footerLength < 0 || footerLength > length - 12) {
+                throw new IOException("Corrupt Parquet footer length: " + footerLength);
+            }
+            byte[] tail = new byte[footerLength + 8];
+            in.seek(length - tail.length);
+            in.readFully(tail);
+            return previewSchema(tail);
+        }
+    }
+
+    /**
+     * Rewrites {@code inputFile} into {@code outputFile} with the given leaf
+     * columns transformed and returns the number of rows.
+     */
+    long process(File inputFile, File outputFile, int[] columns) throws Exception {
+        try (ParquetFileReader reader = new ParquetFileReader(new LocalInputFile(inputFile),
+                ParquetReadOptions.builder().build());
+                SeekableInputStream raw = new LocalInputFile(inputFile).newStream()) {
+            ParquetMetadata footer = reader.getFooter();
+            MessageType schema = footer.getFileMetaData().getSchema();
+            List<ColumnDescriptor> descriptors = schema.getColumns();
+            boolean[] selected = new boolean[descriptors.size()];
+            List<Type> projected = new ArrayList<>();
+            for (int column : columns) {
+                ColumnDescriptor descriptor = checkTransformable(descriptors, column);
+                if (!selected[column]) {
+                    selected[column] = true;
+                    projected.add(schema.getType(descriptor.getPath()[0]));
+                }
+            }
+            MessageType projection = new MessageType(schema.getName(), projected);
+            // Only the selected chunks are read and decompressed; the rest is copied from the raw stream
+            reader.setRequestedSchema(projection);
+
+            LocalOutputFile output = new LocalOutputFile(outputFile);
+            CodecFactory codecs = new CodecFactory(new Configuration(), ParquetProperties.DEFAULT_PAGE_SIZE);
+            try {
+                ParquetFileWriter writer = new ParquetFileWriter(output, schema,
+                        ParquetFileWriter.Mode.OVERWRITE, ParquetWriter.DEFAULT_BLOCK_SIZE,
+                        ParquetWriter.MAX_PADDING_SIZE_DEFAULT,
+                        ParquetProperties.DEFAULT_COLUMN_INDEX_TRUNCATE_LENGTH,
+                        ParquetProperties.DEFAULT_STATISTICS_TRUNCATE_LENGTH,
+                        ParquetProperties.DEFAULT_PAGE_WRITE_CHECKSUM_ENABLED);
+                writer.start();
+                for (BlockMetaData block : footer.getBlocks()) {
+                    long start = System.nanoTime();
+                    long outputStart = writer.getPos();
+                    PageReadStore pages = projected.isEmpty() ? null : reader.readNextRowGroup();
+                    if (pages == null && !projected.isEmpty()) {
+                        throw new IOException("Parquet file ended before row group " + block.getOrdinal());
+                    }
+                    if (pages == null) {
+                        reader.skipNextRowGroup();
+                    }
+                    ColumnReadStoreImpl readStore = pages == null ? null
+                            : new ColumnReadStoreImpl(pages, new NoopGroupConverter(), projection,
+                                    footer.getFileMetaData().getCreatedBy());
+                    BitSet failedRows = new BitSet();
+                    long inputBytes = 0;
+
+                    writer.startBlock(block.getRowCount());
+                    for (ColumnChunkMetaData chunk : block.getColumns()) {
+                        ColumnDescriptor descriptor = schema.getColumnDescription(chunk.getPath().toArray());
+                        int column = descriptors.indexOf(descriptor);
+                        if (selected[column]) {
+                            transformChunk(readStore.getColumnReader(descriptor), chunk, column, schema, codecs,
+                                    writer, failedRows);
+                        } else {
+                            writer.appendColumnChunk(descriptor, raw, chunk, reader.readBloomFilter(chunk),
+                                    reader.readColumnIndex(chunk), reader.readOffsetIndex(chunk));
+                        }
+                        inputBytes += chunk.getTotalSize();
+                    }
+                    writer.endBlock();
+                    listener.rowGroupWritten(block.getRowCount(), failedRows.cardinality(), inputBytes,
+                            writer.getPos() - outputStart, System.nanoTime() - start);
+                }
+                writer.end(footer.getFileMetaData().getKeyValueMetaData());
+            } finally {
+                codecs.release();
+                output.close(); // ParquetFileWriter has no close(); only end() closes the stream
+            }
+            return footer.getBlocks().stream().mapToLong(BlockMetaData::getRowCount).sum();
+        }
+    }
+
+    private static ColumnDescriptor checkTransformable(List<ColumnDescriptor> descriptors, int column) {
+        if (column < 0 || column >= descriptors.size()) {
+            throw new IllegalArgumentException("Column " + column + " does not exist; the file has "
+                    + descriptors.size() + " columns");
+        }
+        ColumnDescriptor descriptor = descriptors.get(column);
+        String name = String.join(".", descriptor.getPath());
+        if (descriptor.getPath().length != 1 || descriptor.getMaxRepetitionLevel() > 0) {
+            throw new IllegalArgumentException("Column " + name + " is nested or repeated; only top-level "
+                    + "columns can be transformed");
+        }
+        if (descriptor.getPrimitiveType().getPrimitiveTypeName() != PrimitiveType.PrimitiveTypeName.BINARY) {
+            throw new IllegalArgumentException("Column " + name + " is "
+                    + descriptor.getPrimitiveType().getPrimitiveTypeName()
+                    + "; only BINARY (string) columns can be transformed");
+        }
+        return descriptor;
+    }
+
+    // Decodes one column chunk, transforms its values and writes it with the chunk's codec
+    private void transformChunk(ColumnReader reader, ColumnChunkMetaData chunk, int column, MessageType schema,
+            CodecFactory codecs, ParquetFileWriter writer, BitSet failedRows) throws Exception {
+        ColumnDescriptor descriptor = reader.getDescriptor();
+        int maxDefinition = descriptor.getMaxDefinitionLevel();
+        int rows = Math.toIntExact(chunk.getValueCount()); // Not repeated: one value per row
+        boolean[] present = new boolean[rows];
+        int[] definitions = new int[rows];
+        List<byte[]> values = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            definitions[i] = reader.getCurrentDefinitionLevel();
+            if (definitions[i] == maxDefinition) {
+                present[i] = true;
+                values.add(reader.getBinary().getBytes());
+            }
+            reader.consume();
+        }
+
+        byte[][] results = transformAll(values, column);
+
+        ParquetProperties props = ParquetProperties.builder()
+                .withWriterVersion(chunk.getEncodingStats() != null && chunk.getEncodingStats().usesV2Pages()
+                        ? ParquetProperties.WriterVersion.PARQUET_2_0
+                        : ParquetProperties.WriterVersion.PARQUET_1_0)
+                .build();
+        MessageType columnSchema = new MessageType(schema.getName(), schema.getType(descriptor.getPath()[0]));
+        ColumnChunkPageWriteStore pageStore = new ColumnChunkPageWriteStore(codecs.getCompressor(chunk.getCodec()),
+                columnSchema, props.getAllocator(), props.getColumnIndexTruncateLength(),
+                props.getPageWriteChecksumEnabled());
+        ColumnWriteStore writeStore = props.newColumnWriteStore(columnSchema, pageStore);
+        ColumnWriter columnWriter = writeStore.getColumnWriter(descriptor);
+        int k = 0;
+        for (int i = 0; i < rows; i++) {
+            if (!present[i]) {
+                columnWriter.writeNull(0, definitions[i]);
+            } else if (results[k] != null) {
+                columnWriter.write(Binary.fromConstantByteArray(results[k]), 0, maxDefinition);
+                k++;
+            } else {
+                if (maxDefinition == 0) {
+                    throw new IOException("Failed to process a value of required column "
+                            + String.join(".", descriptor.getPath()));
+                }
+                columnWriter.writeNull(0, maxDefinition - 1);
+                failedRows.set(i);
+                k++;
+            }
+            writeStore.endRecord();
+        }
+        writeStore.flush();
+        pageStore.flushToFileWriter(writer);
+        writeStore.close();
+    }
+
+    // Batches of chunkSize values, picked up by up to workerCount workers
+    private byte[][] transformAll(List<byte[]> values, int column) throws Exception {
+        byte[][] results = new byte[values.size()][];
+        int batches = (values.size() + chunkSize - 1) / chunkSize;
+        AtomicInteger nextBatch = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int w = 0; w < Math.min(workerCount, batches); w++) {
+            workers.add(executor.submit(() -> {
+                int b;
+                while ((b = nextBatch.getAndIncrement()) < batches) {
+                    int from = b * chunkSize;
+                    int to = Math.min(values.size(), from + chunkSize);
+                    System.arraycopy(handler.transform(values.subList(from, to), column), 0, results, from,
+                            to - from);
+                }
+                return null;
+            }));
+        }
+        boolean completed = false;
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            completed = true;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            if (!completed) {
+                // A failed batch or a cancelled job: the other workers must stop making crypto calls
+                for (Future<?> worker : workers) {
+                    worker.cancel(true);
+                }
+            }
+        }
+        return results;
+    }
+
+    // The column readers need a converter tree, though values are read directly
+    private static final class NoopGroupConverter extends GroupConverter {
+        private final PrimitiveConverter primitive = new PrimitiveConverter() {
+        };
+
+        @Override
+        public Converter getConverter(int fieldIndex) {
+            return primitive;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    // Local files without Hadoop's FileSystem, which would also write .crc side files
+    private static final class LocalInputFile implements InputFile {
+        private final File file;
+
+        LocalInputFile(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public long getLength() {
+            return file.length();
+        }
+
+        @Override
+        public SeekableInputStream newStream() throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            return new DelegatingSeekableInputStream(Channels.newInputStream(channel)) {
+                @Override
+                public long getPos() throws IOException {
+                    return channel.position();
+                }
+
+                @Override
+                public void seek(long newPos) throws IOException {
+                    channel.position(newPos);
+                }
+            };
+        }
+    }
+
+    private static final class LocalOutputFile implements OutputFile {
+        private final File file;
+        private OutputStream stream; // The last one opened, closed by close() on any outcome
+
+        LocalOutputFile(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) throws IOException {
+            return createOrOverwrite(blockSizeHint);
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+            BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+            stream = out;
+            return new PositionOutputStream() {
+                private long position;
+
+                @Override
+                public long getPos() {
+                    return position;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    position++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    position += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+
+        // Closing twice is harmless, so this also runs after a successful end()
+        void close() throws IOException {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.cadp.web.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of the conversion pipeline, exported through Actuator
+ * (e.g. {@code /actuator/prometheus}).
+ * <ul>
+ * <li>{@code cadp.crypto.call}: latency histogram of every engine call by
+ * operation, policy, batch/single and outcome; {@code cadp.crypto.values}
+ * counts the values sent and {@code cadp.crypto.retries} the retried
+ * calls.</li>
+ * <li>{@code cadp.crypto.breaker.state}: 0 closed, 1 open, 2 half-open.</li>
+ * <li>{@code cadp.pipeline.rows}, {@code .bytes}, {@code .errors}: totals
+ * over all jobs, and {@code cadp.job.rows} / {@code cadp.job.bytes} per
+ * running job; their rate is rows/sec and bytes/sec.</li>
+ * <li>{@code cadp.pipeline.chunk.write}: time to write one chunk.</li>
+ * <li>{@code cadp.pipeline.queued.chunks} / {@code .pending.write.chunks}:
+ * chunks waiting for a worker and for the writer, over all running jobs.</li>
+ * <li>{@code cadp.jobs.queued} / {@code .running} and the {@code executor.*}
+ * meters of the {@code cadp.workers} pool (active / pool size is the
+ * utilization).</li>
+ * </ul>
+ */
+@Service
+public class PipelineMetrics {
+
+    private final MeterRegistry registry;
+
+    @Autowired(required = false)
+    private JobScheduler jobScheduler;
+
+    private final Map<String, Timer> callTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> valueCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> retryCounters = new ConcurrentHashMap<>();
+    private final Map<String, List<Meter>> jobMeters = new ConcurrentHashMap<>();
+    private final Set<ChunkPipeline> pipelines = ConcurrentHashMap.newKeySet();
+
+    private final Counter rows;
+    private final Counter bytes;
+    private final Counter errors;
+    private final Timer chunkWrite;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.rows = Counter.builder("cadp.pipeline.rows").description("Rows written by all jobs")
+                .register(registry);
+        this.bytes = Counter.builder("cadp.pipeline.bytes").description("Output bytes written by all jobs")
+                .baseUnit("bytes").register(registry);
+        this.errors = Counter.builder("cadp.pipeline.errors").description("Rows written as errors")
+                .register(registry);
+        this.chunkWrite = Timer.builder("cadp.pipeline.chunk.write").description("Time to write one chunk")
+                .publishPercentileHistogram().register(registry);
+        Gauge.builder("cadp.pipeline.queued.chunks", pipelines, PipelineMetrics::queuedChunks)
+                .description("Chunks read but not yet picked up by a worker").register(registry);
+        Gauge.builder("cadp.pipeline.pending.write.chunks", pipelines, PipelineMetrics::pendingWriteChunks)
+                .description("Transformed chunks waiting for the writer").register(registry);
+    }
+
+    /**
+     * Meters that go nowhere, for services built outside Spring (benchmarks).
+     */
+    static PipelineMetrics noop() {
+        return new PipelineMetrics(new CompositeMeterRegistry());
+    }
+
+    @PostConstruct
+    public void bindScheduler() {
+        if (jobScheduler == null) {
+            return;
+        }
+        Gauge.builder("cadp.jobs.queued", jobScheduler, JobScheduler::getQueuedJobs)
+                .description("Jobs waiting for a slot").register(registry);
+        Gauge.builder("cadp.jobs.running", jobScheduler, JobScheduler::getRunningJobs)
+                .description("Jobs holding a slot").register(registry);
+        Gauge.builder("cadp.crypto.in.flight", jobScheduler, JobScheduler::getCryptoCallsInFlight)
+                .description("Crypto calls running on virtual threads").register(registry);
+        new ExecutorServiceMetrics(jobScheduler.getWorkerPool(), "cadp.workers", Tags.empty()).bindTo(registry);
+    }
+
+    void recordCryptoCall(String operation, String policy, boolean batch, int values, long nanos,
+            String outcome) {
+        String p = String.valueOf(policy);
+        callTimers.computeIfAbsent(operation + '|' + p + '|' + batch + '|' + outcome,
+                k -> Timer.builder("cadp.crypto.call").description("Crypto engine call latency")
+                        .tags("operation", operation, "policy", p, "batch", String.valueOf(batch), "outcome",
+                                outcome)
+                        .publishPercentileHistogram().register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+        valueCounters.computeIfAbsent(operation + '|' + p,
+                k -> Counter.builder("cadp.crypto.values").description("Values sent to the crypto engine")
+                        .tags("operation", operation, "policy", p).register(registry))
+                .increment(values);
+    }
+
+    void recordRetry(String operation) {
+        retryCounters.computeIfAbsent(operation,
+                k -> Counter.builder("cadp.crypto.retries").description("Crypto engine calls retried after an error")
+                        .tag("operation", operation).register(registry))
+                .increment();
+    }
+
+    void bindCircuitBreaker(CircuitBreaker breaker) {
+        Gauge.builder("cadp.crypto.breaker.state", breaker, b -> b.getState().ordinal())
+                .description("Crypto engine circuit breaker: 0 closed, 1 open, 2 half-open").register(registry);
+    }
+
+    void recordChunkWrite(long nanos, long lines, long errorLines) {
+        chunkWrite.record(nanos, TimeUnit.NANOSECONDS);
+        rows.increment(lines);
+        errors.increment(errorLines);
+    }
+
+    void recordBytes(long written) {
+        bytes.increment(written);
+    }
+
+    /**
+     * Per-job meters, tagged with the job id, until {@link #endJob}.
+     */
+    void startJob(com.cadp.web.dto.JobStatus job) {
+        Tags tags = Tags.of("job", job.getJobId());
+        List<Meter> meters = new ArrayList<>();
+        meters.add(FunctionCounter.builder("cadp.job.rows", job, com.cadp.web.dto.JobStatus::getProcessedLines)
+                .description("Rows written by the job").tags(tags).register(registry));
+        meters.add(FunctionCounter.builder("cadp.job.bytes", job, com.cadp.web.dto.JobStatus::getProcessedBytes)
+                .description("Output bytes written by the job").baseUnit("bytes").tags(tags).register(registry));
+        meters.add(Gauge.builder("cadp.job.concurrency.limit", job, com.cadp.web.dto.JobStatus::getConcurrencyLimit)
+                .description("In-flight crypto calls the job's adaptive limiter allows").tags(tags)
+                .register(registry));
+        jobMeters.put(job.getJobId(), meters);
+    }
+
+    void endJob(com.cadp.web.dto.JobStatus job) {
+        List<Meter> meters = jobMeters.remove(job.getJobId());
+        if (meters != null) {
+            for (Meter meter : meters) {
+                registry.remove(meter);
+            }
+        }
+    }
+
+    void addPipeline(ChunkPipeline pipeline) {
+        pipelines.add(pipeline);
+    }
+
+    void removePipeline(ChunkPipeline pipeline) {
+        pipelines.remove(pipeline);
+    }
+
+    private static double queuedChunks(Set<ChunkPipeline> pipelines) {
+        return pipelines.stream().mapToInt(ChunkPipeline::getQueuedChunks).sum();
+    }
+
+    private static double pendingWriteChunks(Set<ChunkPipeline> pipelines) {
+        return pipelines.stream().mapToInt(ChunkPipeline::getPendingWriteChunks).sum();
+    }
+}
@@ -0,0 +1,369 @@
+package com.cadp.web.service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel processing of a file that is already on local disk.
+ * <p>
+ * The file is cut into byte ranges that start right after a line break, and
+ * each worker memory-maps one range at a time, copies it a window at a time
+ * into a heap buffer where line breaks are found eight bytes at a time, cuts
+ * it into chunks of raw UTF-8 lines, transforms them and writes the result to
+ * its own segment file. A range's mapping is released as soon as the range is
+ * done.
+ * Once all ranges are done the segments are concatenated in order with
+ * {@link FileChannel#transferTo}, so reading and parsing scale with the number
+ * of workers instead of being limited by a single reader thread.
+ * <p>
+ * With compressed output every segment is a series of gzip members,
+ * compressed by the worker that writes it, and the concatenation is one
+ * gzip file.
+ * <p>
+ * With a {@link JobJournal}, the range layout and each range's progress are
+ * checkpointed so an interrupted run picks up every range where it stopped.
+ * <p>
+ * Ranges are capped at {@value #MAX_RANGE_BYTES} bytes to stay within the
+ * 2 GB limit of a single mapping; there are at least as many ranges as
+ * workers and idle workers pick up the next unprocessed range. Given a
+ * {@link LineIndex}, the ranges are cut at indexed records so that each holds
+ * about the same number of lines rather than bytes.
+ */
+class RangeFileProcessor {
+
+    /**
+     * Transforms one chunk of raw lines and writes the result to the range's
+     * segment and returns the number of failed lines. The chunk buffer is
+     * reused once this returns.
+     */
+    interface ChunkHandler {
+        long handle(LineChunk lines, OutputStream segment) throws IOException;
+    }
+
+    static final long MAX_RANGE_BYTES = 256L * 1024 * 1024;
+    private static final int BOUNDARY_SCAN_BYTES = 64 * 1024;
+    private static final int WINDOW_BYTES = 1024 * 1024;
+    private static final MethodHandle UNMAP = unmapHandle();
+
+    private final ExecutorService executor;
+    private final int workerCount;
+    private final int chunkSize;
+    private final boolean compress;
+    private final ChunkHandler handler;
+
+    RangeFileProcessor(ExecutorService executor, int workerCount, int chunkSize, boolean compress,
+            ChunkHandler handler) {
+        this.executor = executor;
+        this.workerCount = Math.max(1, workerCount);
+        this.chunkSize = chunkSize;
+        this.compress = compress;
+        this.handler = handler;
+    }
+
+    /**
+     * Processes the whole file and returns the number of non-empty lines,
+     * header included. {@code journal} may be {@code null}.
+     */
+    long process(File inputFile, File outputFile, boolean skipHeader, JobJournal journal) throws Exception {
+        return process(inputFile, outputFile, skipHeader, journal, null);
+    }
+
+    /**
+     * Same as above, splitting a new layout by the records in {@code index}
+     * when given.
+     */
+    long process(File inputFile, File outputFile, boolean skipHeader, JobJournal journal, LineIndex index)
+            throws Exception {
+        List<File> segments = new ArrayList<>();
+        boolean done = false;
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            List<long[]> ranges = journal != null ? journal.getLayout() : new ArrayList<>();
+            if (ranges.isEmpty()) {
+                ranges = index != null ? split(channel, index) : split(channel);
+                if (journal != null) {
+                    journal.setLayout(ranges);
+                }
+            }
+            List<long[]> layout = ranges;
+            for (int r = 0; r < ranges.size(); r++) {
+                segments.add(new File(outputFile.getPath() + ".part" + r));
+            }
+
+            AtomicInteger nextRange = new AtomicInteger();
+            AtomicLong lineCount = new AtomicLong();
+            List<Future<?>> workers = new ArrayList<>();
+            for (int w = 0; w < Math.min(workerCount, layout.size()); w++) {
+                workers.add(executor.submit(() -> {
+                    int r;
+                    while ((r = nextRange.getAndIncrement()) < layout.size()) {
+                        lineCount.addAndGet(processRange(channel, r, layout.get(r), r == 0 && skipHeader,
+                                segments.get(r), journal));
+                    }
+                    return null;
+                }));
+            }
+
+            try {
+                for (Future<?> worker : workers) {
+                    worker.get();
+                }
+            } catch (ExecutionException e) {
+                for (Future<?> worker : workers) {
+                    worker.cancel(true);
+                }
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+
+            concatenate(segments, outputFile);
+            done = true;
+            return lineCount.get();
+        } finally {
+            // A journaled run keeps its segments on failure so that it can be resumed
+            if (done || journal == null) {
+                for (File segment : segments) {
+                    Files.deleteIfExists(segment.toPath());
+                }
+            }
+        }
+    }
+
+    // [start, end) byte ranges, each starting at the beginning of a line
+    private List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long rangeCount = Math.max(workerCount, (size + MAX_RANGE_BYTES - 1) / MAX_RANGE_BYTES);
+        List<long[]> ranges = new ArrayList<>();
+        splitBytes(channel, 0, size, rangeCount, ranges);
+        return ranges;
+    }
+
+    // Same, cut at indexed records; a piece still over the mapping limit is split further by bytes
+    private List<long[]> split(FileChannel channel, LineIndex index) throws IOException {
+        long size = channel.size();
+        long rangeCount = Math.max(workerCount, (size + MAX_RANGE_BYTES - 1) / MAX_RANGE_BYTES);
+        List<long[]> ranges = new ArrayList<>();
+        long start = 0;
+        for (long point : index.splitPoints((int) Math.min(rangeCount, Integer.MAX_VALUE))) {
+            if (point >= size) {
+                break;
+            }
+            splitBytes(channel, start, point, (point - start + MAX_RANGE_BYTES - 1) / MAX_RANGE_BYTES, ranges);
+            start = point;
+        }
+        splitBytes(channel, start, size, (size - start + MAX_RANGE_BYTES - 1) / MAX_RANGE_BYTES, ranges);
+        return ranges;
+    }
+
+    // Cuts [from, to) into about rangeCount line-aligned ranges; from must start a line
+    private static void splitBytes(FileChannel channel, long from, long to, long rangeCount, List<long[]> ranges)
+            throws IOException {
+        long target = Math.max(1, (to - from) / Math.max(1, rangeCount));
+        long start = from;
+        while (start < to) {
+            long end = start + target >= to ? to : Math.min(to, lineStartAfter(channel, start + target, to));
+            if (end - start > MAX_RANGE_BYTES) {
+                // A single line longer than a range cannot be split on a line break
+                throw new IOException("Line too long for parallel processing near byte offset " + start);
+            }
+            ranges.add(new long[] { start, end });
+            start = end;
+        }
+    }
+
+    // Offset just past the first '\n' or '\r' at or after position, or size if there is none
+    private static long lineStartAfter(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SCAN_BYTES);
+        long offset = position;
+        while (offset < size) {
+            buffer.clear();
+            int n = channel.read(buffer, offset);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    return offset + i + 1;
+                }
+            }
+            offset += n;
+        }
+        return size;
+    }
+
+    private long processRange(FileChannel channel, int index, long[] range, boolean skipHeader, File segment,
+            JobJournal journal) throws IOException {
+        long[] resume = journal == null ? null : journal.lastCommit(index);
+        long from = range[0];
+        long processed = 0;
+        long errors = 0;
+        if (resume != null) {
+            // Drop whatever was written after the last checkpoint
+            try (FileChannel partial = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                partial.truncate(resume[1]);
+            }
+            from = resume[0];
+            processed = resume[2];
+            errors = resume[3];
+        }
+        boolean headerPending = skipHeader && resume == null;
+        long lineCount = processed + (skipHeader && resume != null ? 1 : 0);
+
+        LineChunk chunk = new LineChunk(chunkSize, 64 * 1024);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, from, range[1] - from);
+        try (FileOutputStream file = new FileOutputStream(segment, resume != null);
+                OutputStream out = compress ? new GzipBlockOutputStream(file, false)
+                        : new BufferedOutputStream(file, 64 * 1024)) {
+            // The mapping is copied a window at a time; byte-by-byte gets on it are far slower
+            byte[] bytes = new byte[WINDOW_BYTES];
+            ByteBuffer window = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            long base = from; // File offset of window position 0
+            int n = 0;
+            int p = 0;
+            int lineStart = 0;
+            boolean blank = true;
+            for (;;) {
+                if (p == n) {
+                    if (map.hasRemaining()) {
+                        // Keep the current line and refill the rest, growing the window for a line that fills it
+                        int keep = n - lineStart;
+                        if (keep == bytes.length) {
+                            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                            window = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+                        }
+                        System.arraycopy(bytes, lineStart, bytes, 0, keep);
+                        base += lineStart;
+                        int read = Math.min(bytes.length - keep, map.remaining());
+                        map.get(bytes, keep, read);
+                        lineStart = 0;
+                        p = keep;
+                        n = keep + read;
+                        continue;
+                    }
+                    if (blank) {
+                        break;
+                    }
+                    // The range's last line has no line break of its own
+                } else if (blank) {
+                    // Lines end at '\n', '\r' or both, as for BufferedReader.readLine; a CRLF only adds a blank line
+                    byte b = bytes[p];
+                    if (b == '\n' || b == '\r') {
+                        lineStart = p + 1;
+                    } else if ((b & 0xff) > ' ') {
+                        // Same as String.trim(): bytes up to ' ' are blank, UTF-8 multi-byte sequences never are
+                        blank = false;
+                    }
+                    p++;
+                    continue;
+                } else {
+                    p = LineIndex.lineBreak(window, p, n);
+                    if (p == n) {
+                        continue;
+                    }
+                }
+
+                lineCount++;
+                if (headerPending) {
+                    out.write(bytes, lineStart, p - lineStart);
+                    out.write(LineChunk.NEWLINE);
+                    headerPending = false;
+                } else {
+                    chunk.addLine(bytes, lineStart, p - lineStart);
+                    if (chunk.size() >= chunkSize) {
+                        errors += handler.handle(chunk, out);
+                        processed += chunk.size();
+                        chunk.clear();
+                        if (journal != null && journal.isDue(index)) {
+                            checkpoint(journal, index, Math.min(base + p + 1, range[1]), file, out, processed,
+                                    errors);
+                        }
+                    }
+                }
+                if (p == n) {
+                    break;
+                }
+                lineStart = ++p;
+                blank = true;
+            }
+            if (chunk.size() > 0) {
+                errors += handler.handle(chunk, out);
+                processed += chunk.size();
+            }
+            if (journal != null) {
+                checkpoint(journal, index, range[1], file, out, processed, errors);
+            }
+        } finally {
+            unmap(map);
+        }
+        return lineCount;
+    }
+
+    // Releases a mapping right away instead of whenever it is garbage collected; nothing may use it afterwards
+    private static void unmap(MappedByteBuffer map) {
+        if (UNMAP == null) {
+            return;
+        }
+        try {
+            UNMAP.invoke(map);
+        } catch (Throwable e) {
+            // Left to the garbage collector
+        }
+    }
+
+    // Unsafe.invokeCleaner, looked up at runtime as it is not part of the public API; null where unavailable
+    private static MethodHandle unmapHandle() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void checkpoint(JobJournal journal, int index, long position, FileOutputStream file,
+            OutputStream out, long processed, long errors) throws IOException {
+        GzipBlockOutputStream.sync(out);
+        file.getChannel().force(false);
+        journal.commit(index, position, file.getChannel().position(), processed, errors);
+    }
+
+    private static void concatenate(List<File> segments, File outputFile) throws IOException {
+        try (FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (File segment : segments) {
+                try (FileChannel in = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long transferred = 0;
+                    while (transferred < size) {
+                        transferred += in.transferTo(transferred, size - transferred, out);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.cadp.web.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in for the Key Manager, used to benchmark and load-test the
+ * pipeline without a KMS.
+ * <p>
+ * Output is deterministic: the plaintext is XORed with a key derived from the
+ * policy name and Base64 (URL-safe) encoded, so {@code reveal(protect(x))} returns
+ * {@code x} and the ciphertext never contains common delimiters. Each call can
+ * be slowed down by a fixed latency plus random jitter, and can fail at a
+ * configurable rate to exercise the error paths. Batch calls pay the simulated
+ * latency once per batch, like a bulk endpoint would.
+ */
+public class StubCryptoEngine implements CryptoEngine {
+
+    private final long latencyMicros;
+    private final long jitterMicros;
+    private final double errorRate;
+
+    public StubCryptoEngine(long latencyMicros, long jitterMicros, double errorRate) {
+        this.latencyMicros = Math.max(0, latencyMicros);
+        this.jitterMicros = Math.max(0, jitterMicros);
+        this.errorRate = Math.max(0.0, Math.min(1.0, errorRate));
+    }
+
+    @Override
+    public void register(String host, String port, String token) {
+        // Nothing to register
+    }
+
+    @Override
+    public byte[] protect(byte[] plainText, String policyName) throws Exception {
+        simulateCall();
+        byte[] mixed = xor(plainText, policyName);
+        return Base64.getUrlEncoder().withoutPadding().encode(mixed);
+    }
+
+    @Override
+    public byte[] reveal(byte[] cipherText, String policyName, String userName) throws Exception {
+        simulateCall();
+        byte[] mixed = Base64.getUrlDecoder().decode(cipherText);
+        return xor(mixed, policyName);
+    }
+
+    @Override
+    public List<byte[]> protectBatch(List<byte[]> plainTexts, String policyName) throws Exception {
+        simulateCall();
+        List<byte[]> results = new ArrayList<>(plainTexts.size());
+        for (byte[] plainText : plainTexts) {
+            results.add(Base64.getUrlEncoder().withoutPadding().encode(xor(plainText, policyName)));
+        }
+        return results;
+    }
+
+    @Override
+    public List<byte[]> revealBatch(List<byte[]> cipherTexts, String policyName, String userName)
+            throws Exception {
+        simulateCall();
+        List<byte[]> results = new ArrayList<>(cipherTexts.size());
+        for (byte[] cipherText : cipherTexts) {
+            results.add(xor(Base64.getUrlDecoder().decode(cipherText), policyName));
+        }
+        return results;
+    }
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    private void simulateCall() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMicros + (jitterMicros > 0 ? random.nextLong(jitterMicros + 1) : 0);
+        if (delay > 0) {
+            LockSupport.parkNanos(delay * 1000L);
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            throw new Exception("Simulated crypto failure");
+        }
+    }
+
+    private static byte[] xor(byte[] data, String policyName) {
+        byte[] key = (policyName != null ? policyName : "").getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[data.length];
+        int seed = key.length == 0 ? 0x5A : 0;
+        for (byte b : key) {
+            seed = seed * 31 + b;
+        }
+        for (int i = 0; i < data.length; i++) {
+            out[i] = (byte) (data[i] ^ (seed >>> ((i & 3) * 8)));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,159 @@
+package com.cadp.web.service;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded LRU cache of crypto results for one job, keyed by
+ * (policy, column, input bytes), so repeated cells such as country codes or
+ * customer IDs are sent to the crypto layer once.
+ * <p>
+ * Only valid when the same input always gives the same output: always for
+ * reveal, and for protect only with a deterministic policy. Evicted entries
+ * and everything left at {@link #wipe()} are overwritten with zeros before
+ * they are dropped.
+ */
+final class ValueCache {
+
+    static final class Key {
+        private final String policy;
+        private final int column;
+        private final byte[] value;
+        private final int hash;
+
+        Key(String policy, int column, byte[] value) {
+            this.policy = policy;
+            this.column = column;
+            this.value = value;
+            this.hash = (policy.hashCode() * 31 + column) * 31 + Arrays.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && column == other.column && policy.equals(other.policy)
+                    && Arrays.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // A lock rather than a monitor, so workers waiting for it never pin a virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, byte[]> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ValueCache(int maxEntries) {
+        this.entries = new LinkedHashMap<Key, byte[]>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                if (size() > maxEntries) {
+                    zero(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a cache for the request, or {@code null} when caching is off or
+     * not safe for any of its columns' modes and policies.
+     */
+    static ValueCache forRequest(com.cadp.web.dto.JobRequest request, int maxEntries) {
+        int size = Math.min(request.getCacheSize(), maxEntries);
+        if (size <= 0) {
+            return null;
+        }
+        for (com.cadp.web.dto.ColumnTransform t : ColumnTransforms.resolve(request)) {
+            if (isCacheable("protect".equals(t.getMode()), t.isDeterministic())) {
+                return new ValueCache(size);
+            }
+        }
+        return null;
+    }
+
+    // Whether a column's results may be cached: reveal always, protect only under a deterministic policy
+    static boolean isCacheable(boolean protect, boolean deterministic) {
+        return !protect || deterministic;
+    }
+
+    // Entries hold private copies, so zeroing them never touches arrays a caller still uses
+
+    byte[] get(Key key) {
+        lock.lock();
+        try {
+            byte[] result = entries.get(key);
+            if (result == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return result.clone();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(Key key, byte[] result) {
+        Key copy = new Key(key.policy, key.column, key.value.clone());
+        byte[] value = result.clone();
+        lock.lock();
+        try {
+            byte[] previous = entries.put(copy, value);
+            if (previous != null) {
+                // Another worker cached it first; the map kept its key, so both copies of ours go
+                Arrays.fill(previous, (byte) 0);
+                Arrays.fill(copy.value, (byte) 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A repeat of a value already pending in the same batch, answered without a crypto call
+    void recordHit() {
+        hits.increment();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Zeroes every cached input and result and empties the cache.
+     */
+    void wipe() {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Key, byte[]>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, byte[]> entry = it.next();
+                zero(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void zero(Key key, byte[] result) {
+        Arrays.fill(key.value, (byte) 0);
+        Arrays.fill(result, (byte) 0);
+    }
+}
@@ -0,0 +1,112 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private Path allowed;
+    private Path outside;
+    private BatchService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        allowed = Files.createDirectories(dir.resolve("allowed")).toRealPath();
+        outside = Files.createDirectories(dir.resolve("outside")).toRealPath();
+        service = new BatchService();
+        ReflectionTestUtils.setField(service, "allowedDirs", allowed.toString());
+        ReflectionTestUtils.setField(service, "maxFiles", 1000);
+        service.init();
+    }
+
+    private static Path touch(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, "a,b\n".getBytes());
+    }
+
+    private List<File> inputs(String... patterns) throws IOException {
+        return service.resolveInputs(Arrays.asList(patterns));
+    }
+
+    @Test
+    void onlyAllowedDirectoriesAreReadOrWritten() throws IOException {
+        Path in = touch(allowed.resolve("in.csv"));
+        Path secret = touch(outside.resolve("secret.csv"));
+
+        assertEquals(Collections.singletonList(in.toFile()), inputs(in.toString()));
+        assertThrows(IllegalArgumentException.class, () -> inputs(secret.toString()));
+        assertThrows(IllegalArgumentException.class, () -> inputs(outside + "/*.csv"));
+        // Dot-dot is resolved before the check
+        assertThrows(IllegalArgumentException.class, () -> inputs(allowed + "/../outside/secret.csv"));
+        assertThrows(IllegalArgumentException.class, () -> inputs("relative/in.csv"));
+
+        assertEquals(allowed.resolve("out/new").toFile(), service.resolveOutputDir(allowed + "/out/new"));
+        assertTrue(Files.isDirectory(allowed.resolve("out/new")));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveOutputDir(outside + "/new"));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveOutputDir(allowed + "/../outside/new"));
+        assertFalse(Files.exists(outside.resolve("new")));
+    }
+
+    @Test
+    void symbolicLinksCannotEscape() throws IOException {
+        touch(outside.resolve("secret.csv"));
+        Path link = Files.createSymbolicLink(allowed.resolve("link"), outside);
+
+        assertThrows(IllegalArgumentException.class, () -> inputs(link + "/secret.csv"));
+        assertThrows(IllegalArgumentException.class, () -> inputs(link + "/*.csv"));
+        assertThrows(IllegalArgumentException.class, () -> inputs(allowed + "/**.csv"));
+
+        assertThrows(IllegalArgumentException.class, () -> service.resolveOutputDir(link + "/new/deeper"));
+        assertFalse(Files.exists(outside.resolve("new")), "created a directory outside the allowed ones");
+        assertThrows(IllegalArgumentException.class, () -> service.resolveOutputDir(link.toString()));
+
+        // A link that stays inside is followed
+        Path inner = Files.createDirectories(allowed.resolve("real"));
+        Path innerLink = Files.createSymbolicLink(allowed.resolve("alias"), inner);
+        assertEquals(inner.resolve("out").toFile(), service.resolveOutputDir(innerLink + "/out"));
+
+        // Nothing is created through a dangling link
+        Path dangling = Files.createSymbolicLink(allowed.resolve("dangling"), outside.resolve("gone"));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveOutputDir(dangling + "/new"));
+        assertFalse(Files.exists(outside.resolve("gone")));
+    }
+
+    @Test
+    void globsExpandToSortedRegularFilesWithoutDuplicates() throws IOException {
+        Path a = touch(allowed.resolve("data/a.csv"));
+        Path b = touch(allowed.resolve("data/b.csv"));
+        Path c = touch(allowed.resolve("data/sub/c.csv"));
+        touch(allowed.resolve("data/notes.txt"));
+        Files.createDirectories(allowed.resolve("data/dir.csv"));
+
+        assertEquals(Arrays.asList(a.toFile(), b.toFile()), inputs(allowed + "/data/*.csv"));
+        assertEquals(Arrays.asList(a.toFile(), b.toFile(), c.toFile()), inputs(allowed + "/data/**.csv"));
+        assertEquals(Arrays.asList(b.toFile(), a.toFile()), inputs(b.toString(), allowed + "/data/[ab].csv"));
+        assertEquals(Arrays.asList(c.toFile()), inputs(allowed + "/*/sub/?.csv"));
+        assertEquals(Arrays.asList(a.toFile(), c.toFile()), inputs(allowed + "/data/{a,sub/c}.csv"));
+
+        assertThrows(IllegalArgumentException.class, () -> inputs(allowed + "/data/*.parquet"));
+        assertThrows(IllegalArgumentException.class, () -> inputs(allowed + "/data/dir.csv"));
+
+        ReflectionTestUtils.setField(service, "maxFiles", 2);
+        assertThrows(IllegalArgumentException.class, () -> inputs(allowed + "/data/**.csv"));
+    }
+}
@@ -0,0 +1,182 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkPipelineTest {
+
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final ExecutorService writers = Executors.newCachedThreadPool();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    // Everything the pipeline wrote, one entry per line
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void stopThreads() {
+        workers.shutdownNow();
+        writers.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    private ChunkPipeline pipeline(int workerCount, int maxInFlight, Function<List<String>, List<String>> transform) {
+        return new ChunkPipeline(workers, writers, workerCount, maxInFlight, transform, written::addAll);
+    }
+
+    private static List<String> chunk(int index) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            lines.add(index + ":" + i);
+        }
+        return lines;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void writesInSubmissionOrderWhateverOrderWorkersFinishIn() throws Exception {
+        ChunkPipeline pipeline = pipeline(4, 8, lines -> {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<String> results = new ArrayList<>();
+            for (String line : lines) {
+                results.add(line.toUpperCase());
+            }
+            return results;
+        });
+        List<String> expected = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            // Some empty chunks too
+            List<String> lines = random.nextInt(10) == 0 ? new ArrayList<>() : chunk(i);
+            expected.addAll(lines);
+            pipeline.submit(lines);
+        }
+        pipeline.finish();
+
+        assertEquals(expected, written);
+        assertEquals(0, pipeline.getPendingWriteChunks());
+    }
+
+    @Test
+    void submitBlocksWhileTheWriterIsBehind() throws Exception {
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ChunkPipeline pipeline = new ChunkPipeline(workers, writers, 2, 3, lines -> lines, results -> {
+            writerBlocked.countDown();
+            await(release);
+            written.addAll(results);
+        });
+
+        // Three chunks in flight, the first one stuck in the writer
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit(chunk(i));
+        }
+        assertTrue(writerBlocked.await(5, TimeUnit.SECONDS));
+        Future<?> fourth = callers.submit(() -> {
+            pipeline.submit(chunk(3));
+            return null;
+        });
+        assertThrows(TimeoutException.class, () -> fourth.get(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        fourth.get(5, TimeUnit.SECONDS);
+        pipeline.finish();
+        assertEquals(12, written.size());
+    }
+
+    @Test
+    void workerFailureIsRethrownAndNothingAfterItIsWritten() throws Exception {
+        IllegalStateException boom = new IllegalStateException("transform failed");
+        ChunkPipeline pipeline = pipeline(2, 4, lines -> {
+            if (lines.get(0).startsWith("5:")) {
+                throw boom;
+            }
+            return lines;
+        });
+        Exception thrown = assertThrows(Exception.class, () -> {
+            for (int i = 0; i < 1000; i++) {
+                pipeline.submit(chunk(i));
+            }
+            pipeline.finish();
+        });
+
+        assertSame(boom, thrown);
+        assertTrue(written.size() <= 5 * 3, "wrote past the failed chunk");
+        for (String line : written) {
+            assertTrue(Integer.parseInt(line.substring(0, line.indexOf(':'))) < 5);
+        }
+        assertSame(boom, assertThrows(Exception.class, () -> pipeline.submit(chunk(1000))));
+    }
+
+    @Test
+    void writerFailureIsRethrown() throws Exception {
+        IOException diskFull = new IOException("No space left on device");
+        ChunkPipeline pipeline = new ChunkPipeline(workers, writers, 2, 4, lines -> lines, results -> {
+            throw diskFull;
+        });
+        Exception thrown = assertThrows(Exception.class, () -> {
+            for (int i = 0; i < 1000; i++) {
+                pipeline.submit(chunk(i));
+            }
+            pipeline.finish();
+        });
+        assertSame(diskFull, thrown);
+    }
+
+    @Test
+    void abortStopsWorkersAndWritesNothingMore() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        List<Boolean> interrupted = Collections.synchronizedList(new ArrayList<>());
+        ChunkPipeline pipeline = pipeline(2, 4, lines -> {
+            started.countDown();
+            await(never);
+            interrupted.add(Thread.currentThread().isInterrupted());
+            return lines;
+        });
+        pipeline.submit(chunk(0));
+        pipeline.submit(chunk(1));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        IOException readFailure = new IOException("connection reset");
+        long start = System.nanoTime();
+        pipeline.abort(readFailure);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "abort waited for the writer timeout");
+
+        for (int i = 0; i < 50 && interrupted.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.nCopies(2, true), interrupted);
+        assertTrue(written.isEmpty());
+        assertSame(readFailure, assertThrows(Exception.class, () -> pipeline.submit(chunk(2))));
+    }
+}
@@ -0,0 +1,120 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 100;
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopCallers() {
+        callers.shutdownNow();
+    }
+
+    private static CircuitBreaker openBreaker() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(breaker.acquire());
+            breaker.onFailure(false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private Future<Boolean> acquireAsync(CircuitBreaker breaker) {
+        return callers.submit(breaker::acquire);
+    }
+
+    private static void assertWaiting(Future<Boolean> caller) {
+        assertThrows(TimeoutException.class, () -> caller.get(OPEN_MILLIS / 2, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void closedCallsPassAndSuccessResetsTheCount() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS);
+        for (int round = 0; round < 5; round++) {
+            assertFalse(breaker.acquire());
+            breaker.onFailure(false);
+            breaker.onFailure(false);
+            breaker.onSuccess(false);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensAndLetsOneProbeThroughThatClosesIt() throws Exception {
+        long start = System.nanoTime();
+        CircuitBreaker breaker = openBreaker();
+
+        Future<Boolean> probe = acquireAsync(breaker);
+        assertTrue(probe.get(5, TimeUnit.SECONDS));
+        // Millisecond clock in the breaker, hence the slack
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS - 2));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // Everyone else waits for the probe's outcome
+        Future<Boolean> other = acquireAsync(breaker);
+        assertWaiting(other);
+
+        breaker.onSuccess(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(other.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failedProbeOpensTheCircuitAgain() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+        assertTrue(acquireAsync(breaker).get(5, TimeUnit.SECONDS));
+        Future<Boolean> other = acquireAsync(breaker);
+
+        breaker.onFailure(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        // The waiting caller becomes the next probe once the circuit has been open for a while again
+        assertTrue(other.get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void lateResultsOfCallsFromBeforeTheOpeningDoNotMoveTheCircuit() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS);
+        // Let through while closed, still running when the circuit opens
+        assertFalse(breaker.acquire());
+        assertFalse(breaker.acquire());
+        for (int i = 0; i < 3; i++) {
+            assertFalse(breaker.acquire());
+            breaker.onFailure(false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        breaker.onSuccess(false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        assertTrue(acquireAsync(breaker).get(5, TimeUnit.SECONDS));
+        Future<Boolean> other = acquireAsync(breaker);
+        breaker.onFailure(false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertWaiting(other);
+
+        breaker.onSuccess(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(other.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,101 @@
+package com.cadp.web.service;
+
+import com.cadp.web.dto.ColumnTransform;
+import com.cadp.web.dto.JobRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnTransformsTest {
+
+    private static JobRequest request(String mode, String policy, boolean deterministic, String transforms,
+            Integer... columns) {
+        JobRequest request = new JobRequest();
+        request.setMode(mode);
+        request.setPolicy(policy);
+        request.setDeterministicPolicy(deterministic);
+        request.setColumns(Arrays.asList(columns));
+        request.setTransforms(ColumnTransforms.parse(transforms));
+        return request;
+    }
+
+    @Test
+    void parseReadsBackWhatFormatWrites() {
+        String spec = "1:protect:ssn_policy,3::email_policy,5:reveal:,7:protect:token_policy:deterministic";
+        List<ColumnTransform> transforms = ColumnTransforms.parse(spec);
+
+        assertEquals(4, transforms.size());
+        assertEquals(3, transforms.get(1).getColumn());
+        assertEquals("", transforms.get(1).getMode());
+        assertEquals("email_policy", transforms.get(1).getPolicy());
+        assertEquals("", transforms.get(2).getPolicy());
+        assertTrue(transforms.get(3).isDeterministic());
+        assertEquals(spec, ColumnTransforms.format(transforms));
+        assertEquals(spec, ColumnTransforms.format(ColumnTransforms.parse(ColumnTransforms.format(transforms))));
+    }
+
+    @Test
+    void parseFillsMissingFieldsAndSkipsBlankEntries() {
+        assertTrue(ColumnTransforms.parse(null).isEmpty());
+        assertTrue(ColumnTransforms.parse("  ").isEmpty());
+        assertEquals("2::,4:reveal:", ColumnTransforms.format(ColumnTransforms.parse(" 2 , ,4:reveal ")));
+        assertEquals("", ColumnTransforms.format(null));
+    }
+
+    @Test
+    void parseRejectsMalformedEntries() {
+        assertThrows(IllegalArgumentException.class, () -> ColumnTransforms.parse("x:protect:p"));
+        assertThrows(IllegalArgumentException.class, () -> ColumnTransforms.parse("1:protect:p:random"));
+        assertThrows(IllegalArgumentException.class, () -> ColumnTransforms.parse(":protect"));
+    }
+
+    @Test
+    void overridesReplaceOrAddColumnsAndInheritTheJobsModeAndPolicy() {
+        JobRequest request = request("PROTECT", "job_policy", false, "1:reveal:,4::email_policy,0::", 3, 1, 3);
+
+        assertEquals("0:protect:job_policy,1:reveal:job_policy,3:protect:job_policy,4:protect:email_policy",
+                ColumnTransforms.format(ColumnTransforms.resolve(request)));
+    }
+
+    @Test
+    void overridesAloneWorkWithoutAJobMode() {
+        JobRequest request = request(null, null, false, "2:protect:ssn_policy,0:Reveal:name_policy");
+
+        assertEquals("0:reveal:name_policy,2:protect:ssn_policy",
+                ColumnTransforms.format(ColumnTransforms.resolve(request)));
+        assertTrue(ColumnTransforms.resolve(request(null, "p", false, "", 1)).isEmpty());
+    }
+
+    @Test
+    void resolveRejectsNegativeColumnsAndUnknownModes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ColumnTransforms.resolve(request("protect", "p", false, "-1::")));
+        assertThrows(IllegalArgumentException.class,
+                () -> ColumnTransforms.resolve(request("protect", "p", false, "1:mask:p")));
+        // An override without a mode needs the job to have one
+        assertThrows(IllegalArgumentException.class,
+                () -> ColumnTransforms.resolve(request(null, "p", false, "1::p")));
+    }
+
+    @Test
+    void theJobsDeterminismCoversOnlyColumnsUnderTheJobsPolicy() {
+        JobRequest request = request("protect", "job_policy", true,
+                "2::,3::job_policy,4::random_policy,5::token_policy:deterministic", 0, 1);
+
+        assertEquals("0:protect:job_policy:deterministic,1:protect:job_policy:deterministic,"
+                + "2:protect:job_policy:deterministic,3:protect:job_policy:deterministic,"
+                + "4:protect:random_policy,5:protect:token_policy:deterministic",
+                ColumnTransforms.format(ColumnTransforms.resolve(request)));
+
+        // Without the job flag only an override's own flag counts
+        request.setDeterministicPolicy(false);
+        assertEquals("0:protect:job_policy,1:protect:job_policy,2:protect:job_policy,3:protect:job_policy,"
+                + "4:protect:random_policy,5:protect:token_policy:deterministic",
+                ColumnTransforms.format(ColumnTransforms.resolve(request)));
+    }
+}
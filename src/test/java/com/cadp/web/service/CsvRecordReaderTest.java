@@ -0,0 +1,97 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvRecordReaderTest {
+
+    private static List<String> records(String input) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (CsvRecordReader reader = new CsvRecordReader(new StringReader(input))) {
+            String record;
+            while ((record = reader.readLine()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void lineBreaksInsideQuotesStayInTheRecord() throws IOException {
+        assertEquals(Arrays.asList("1,\"two\nlines\",x", "2,\"crlf\r\ninside\",y", "3,plain,z"),
+                records("1,\"two\nlines\",x\n2,\"crlf\r\ninside\",y\r\n3,plain,z"));
+    }
+
+    @Test
+    void escapedQuotesDoNotEndTheField() throws IOException {
+        assertEquals(Arrays.asList("a,\"say \"\"hi\"\"\nbye\",b", "c"),
+                records("a,\"say \"\"hi\"\"\nbye\",b\nc\n"));
+    }
+
+    @Test
+    void handlesAllLineEndings() throws IOException {
+        assertEquals(Arrays.asList("a", "b", "c", "", "d"), records("a\r\nb\rc\n\nd"));
+        assertEquals(Arrays.asList(), records(""));
+    }
+
+    @Test
+    void crLfSplitAcrossBufferFills() throws IOException {
+        StringBuilder input = new StringBuilder();
+        while (input.length() < 64 * 1024 - 1) {
+            input.append('x');
+        }
+        input.append("\r\nnext\r\n");
+        List<String> records = records(input.toString());
+        assertEquals(2, records.size());
+        assertEquals(64 * 1024 - 1, records.get(0).length());
+        assertEquals("next", records.get(1));
+    }
+
+    @Test
+    void quotedSplitUnquotesFields() {
+        String record = "1,\"a,b\",\"say \"\"hi\"\"\",\"multi\nline\",";
+        assertEquals(Arrays.asList("1", "a,b", "say \"hi\"", "multi\nline", ""),
+                FieldScanner.split(record, ",", true));
+        assertEquals("say \"hi\"", FieldScanner.field(record, ",", true, 2));
+        // Unquoted mode takes quotes literally
+        assertEquals(Arrays.asList("1", "\"a", "b\""), FieldScanner.split("1,\"a,b\"", ",", false));
+    }
+
+    @Test
+    void quotedFieldsWithMultiCharacterDelimiter() {
+        assertEquals(Arrays.asList("x", "a||b", "y"), FieldScanner.split("x||\"a||b\"||y", "||", true));
+    }
+
+    @Test
+    void unterminatedQuoteRunsToTheEndOfTheRecord() {
+        assertEquals(Arrays.asList("1", "\"open,rest"), FieldScanner.split("1,\"open,rest", ",", true));
+    }
+
+    @Test
+    void quotingRoundTrips() {
+        String[] values = { "plain", "with,comma", "with \"quote\"", "two\nlines", "" };
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                record.append(',');
+            }
+            FieldScanner.appendQuotedIfNeeded(record, values[i], ",", false);
+        }
+        assertEquals(Arrays.asList(values), FieldScanner.split(record.toString(), ",", true));
+
+        StringBuilder kept = new StringBuilder();
+        FieldScanner.appendQuotedIfNeeded(kept, "plain", ",", true);
+        assertEquals("\"plain\"", kept.toString());
+        assertTrue(FieldScanner.isQuoted(kept.toString(), 0, kept.length()));
+        assertFalse(FieldScanner.isQuoted("plain", 0, 5));
+    }
+}
@@ -0,0 +1,74 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FieldScannerTest {
+
+    @Test
+    void regexMetacharactersAreLiteralDelimiters() {
+        assertEquals(Arrays.asList("a", "b", "c"), FieldScanner.split("a|b|c", "|"));
+        assertEquals(Arrays.asList("a", "b"), FieldScanner.split("a.b", "."));
+        assertEquals(Arrays.asList("x", "y"), FieldScanner.split("x$y", "$"));
+    }
+
+    @Test
+    void multiCharacterDelimiterIsMatchedWhole() {
+        assertEquals(Arrays.asList("a", "b|c", "d"), FieldScanner.split("a||b|c||d", "||"));
+        assertEquals(Arrays.asList("1", "2", ""), FieldScanner.split("1::2::", "::"));
+        assertEquals("b|c", FieldScanner.field("a||b|c||d", "||", 1));
+    }
+
+    @Test
+    void keepsEmptyFieldsLikeSplitWithNegativeLimit() {
+        assertEquals(Arrays.asList("", "a", "", ""), FieldScanner.split(",a,,", ","));
+        assertEquals(Arrays.asList(""), FieldScanner.split("", ","));
+    }
+
+    @Test
+    void locateMarksMissingColumns() {
+        int[] starts = new int[3];
+        int[] ends = new int[3];
+        FieldScanner.locate("ab,cd", ",", new int[] { 0, 1, 4 }, starts, ends, 0);
+        assertArrayEquals(new int[] { 0, 3, -1 }, starts);
+        assertArrayEquals(new int[] { 2, 5, -1 }, ends);
+        assertNull(FieldScanner.field("ab,cd", ",", 2));
+    }
+
+    @Test
+    void byteLocateMatchesStringLocate() {
+        String line = "id||naïve||€uro||||last";
+        String delimiter = "||";
+        int[] columns = { 0, 1, 2, 3, 4, 5 };
+        byte[] data = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+        int from = 2;
+        int to = data.length - 2;
+        int[] starts = new int[columns.length];
+        int[] ends = new int[columns.length];
+        FieldScanner.locate(data, from, to, delimiter.getBytes(StandardCharsets.UTF_8), columns, starts, ends, 0);
+
+        for (int c = 0; c < columns.length; c++) {
+            String expected = FieldScanner.field(line, delimiter, columns[c]);
+            String actual = starts[c] < 0 ? null
+                    : new String(data, starts[c], ends[c] - starts[c], StandardCharsets.UTF_8);
+            assertEquals(expected, actual, "column " + columns[c]);
+        }
+    }
+
+    @Test
+    void normalizesColumnSelection() {
+        assertArrayEquals(new int[] { 0, 2, 5 }, FieldScanner.normalizeColumns(Arrays.asList(5, 2, -1, 2, null, 0)));
+    }
+
+    @Test
+    void unescapesTab() {
+        assertEquals("\t", FieldScanner.unescape("\\t"));
+        assertEquals(Arrays.asList("a", "b"), FieldScanner.split("a\tb", FieldScanner.unescape("\\t")));
+    }
+}
@@ -0,0 +1,123 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GzipBlockOutputStreamTest {
+
+    @TempDir
+    Path dir;
+
+    // Compressible but not trivial: CSV-like lines with random numbers
+    private static byte[] data(int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(size + 64);
+        while (sb.length() < size) {
+            sb.append(random.nextInt(1_000_000)).append(",name").append(random.nextInt(5000)).append('\n');
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    void concatenatedMembersDecompressAsOneStream() throws IOException {
+        for (boolean parallel : new boolean[] { true, false }) {
+            byte[] data = data(3 * GzipBlockOutputStream.BLOCK_SIZE + 12345, 1);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            try (GzipBlockOutputStream out = new GzipBlockOutputStream(sink, parallel)) {
+                // Uneven writes that straddle block boundaries
+                int off = 0;
+                int step = 1;
+                while (off < data.length) {
+                    int n = Math.min(step, data.length - off);
+                    out.write(data, off, n);
+                    off += n;
+                    step = step * 3 + 1;
+                }
+                out.write('!');
+            }
+            byte[] expected = Arrays.copyOf(data, data.length + 1);
+            expected[data.length] = '!';
+            assertArrayEquals(expected, gunzip(sink.toByteArray()), "parallel=" + parallel);
+        }
+    }
+
+    @Test
+    void outputTruncatedAtASyncPointIsValid() throws IOException {
+        byte[] first = data(GzipBlockOutputStream.BLOCK_SIZE * 2 + 777, 2);
+        byte[] second = data(GzipBlockOutputStream.BLOCK_SIZE + 99, 3);
+        File file = dir.resolve("out.csv.gz").toFile();
+
+        long synced;
+        try (FileOutputStream fileOut = new FileOutputStream(file);
+                GzipBlockOutputStream out = new GzipBlockOutputStream(fileOut, true)) {
+            out.write(first);
+            out.sync();
+            synced = fileOut.getChannel().size();
+            out.write(second);
+            out.flush(); // Writes finished blocks only; the tail after the sync point is not a valid stream
+        }
+
+        // What a crash after the checkpoint leaves once resume truncates to it
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(synced);
+        }
+        assertArrayEquals(first, gunzip(Files.readAllBytes(file.toPath())));
+
+        // Resume appends new members after the truncation point
+        try (GzipBlockOutputStream out = new GzipBlockOutputStream(new FileOutputStream(file, true), true)) {
+            out.write(second);
+        }
+        byte[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        assertArrayEquals(both, gunzip(Files.readAllBytes(file.toPath())));
+    }
+
+    @Test
+    void syncWithoutNewDataAddsNothing() throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        GzipBlockOutputStream out = new GzipBlockOutputStream(sink, true);
+        out.write(data(1000, 4));
+        out.sync();
+        int size = sink.size();
+        out.sync();
+        GzipBlockOutputStream.sync(out);
+        assertEquals(size, sink.size());
+        out.close();
+    }
+
+    @Test
+    void emptyOutputIsAValidGzipFile() throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        new GzipBlockOutputStream(sink, true).close();
+        assertEquals(0, gunzip(sink.toByteArray()).length);
+    }
+}
@@ -0,0 +1,98 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private File journalWithCommits() throws IOException {
+        File file = dir.resolve("checkpoint.journal").toFile();
+        JobJournal journal = JobJournal.open(file, 0);
+        journal.setMode(JobJournal.MODE_RANGES);
+        journal.setLayout(Arrays.asList(new long[] { 0, 1000 }, new long[] { 1000, 2500 }));
+        journal.commit(0, 400, 800, 40, 1);
+        journal.commit(1, 1800, 1600, 80, 0);
+        journal.commit(0, 700, 1400, 70, 2);
+        journal.close();
+        return file;
+    }
+
+    private static void appendRaw(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static void assertCommitted(JobJournal journal) {
+        assertEquals(JobJournal.MODE_RANGES, journal.getMode());
+        List<long[]> layout = journal.getLayout();
+        assertEquals(2, layout.size());
+        assertArrayEquals(new long[] { 0, 1000 }, layout.get(0));
+        assertArrayEquals(new long[] { 1000, 2500 }, layout.get(1));
+        assertArrayEquals(new long[] { 700, 1400, 70, 2 }, journal.lastCommit(0));
+        assertArrayEquals(new long[] { 1800, 1600, 80, 0 }, journal.lastCommit(1));
+        assertArrayEquals(new long[] { 150, 2 }, journal.totals());
+    }
+
+    @Test
+    void reloadsCommittedState() throws IOException {
+        JobJournal journal = JobJournal.open(journalWithCommits(), 0);
+        assertCommitted(journal);
+        assertNull(journal.lastCommit(2));
+        journal.close();
+    }
+
+    @Test
+    void ignoresTornLastRecordEvenWhenItParses() throws IOException {
+        for (String torn : new String[] { "C 0 900 1800 90 1", "C 0 9", "C", "L 0 10", "M lin" }) {
+            File file = journalWithCommits();
+            appendRaw(file, torn);
+            JobJournal journal = JobJournal.open(file, 0);
+            assertCommitted(journal);
+            journal.close();
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    void newRecordsAfterATornOneSurviveTheNextReload() throws IOException {
+        File file = journalWithCommits();
+        long intact = file.length();
+        appendRaw(file, "C 1 19");
+
+        JobJournal journal = JobJournal.open(file, 0);
+        assertEquals(intact, file.length());
+        journal.commit(1, 2500, 2000, 100, 0);
+        journal.close();
+
+        journal = JobJournal.open(file, 0);
+        assertArrayEquals(new long[] { 2500, 2000, 100, 0 }, journal.lastCommit(1));
+        assertArrayEquals(new long[] { 700, 1400, 70, 2 }, journal.lastCommit(0));
+        journal.close();
+        assertTrue(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).endsWith("\n"));
+    }
+
+    @Test
+    void tornLayoutLeavesNoLayout() throws IOException {
+        File file = dir.resolve("layout.journal").toFile();
+        Files.write(file.toPath(), "M ranges\nL 0 1000 1000 25".getBytes(StandardCharsets.UTF_8));
+        JobJournal journal = JobJournal.open(file, 0);
+        assertTrue(journal.getLayout().isEmpty());
+        journal.close();
+    }
+}
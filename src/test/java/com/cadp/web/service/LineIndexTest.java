@@ -0,0 +1,146 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineIndexTest {
+
+    @TempDir
+    Path dir;
+
+    // Start offsets of the non-blank lines, counted the way the pipelines do
+    private static List<Long> recordStarts(byte[] data) {
+        List<Long> starts = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i <= data.length; i++) {
+            if (i == data.length || data[i] == '\n' || data[i] == '\r') {
+                for (int k = lineStart; k < i; k++) {
+                    if ((data[k] & 0xff) > ' ') {
+                        starts.add((long) lineStart);
+                        break;
+                    }
+                }
+                lineStart = i + 1;
+            }
+        }
+        return starts;
+    }
+
+    private File write(byte[] data) throws IOException {
+        File file = dir.resolve("input.csv").toFile();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    void countsAndLocatesRecordsAcrossBufferBoundaries() throws IOException {
+        // Over the 4 MB scan buffer, with blank, whitespace-only, CRLF and non-ASCII lines
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 5 * 1024 * 1024) {
+            switch (random.nextInt(8)) {
+                case 0:
+                    sb.append('\n');
+                    break;
+                case 1:
+                    sb.append(" \t \r\n");
+                    break;
+                case 2:
+                    sb.append("  leading,space,ünïcode\r\n");
+                    break;
+                default:
+                    sb.append(random.nextInt(100000)).append(",name").append(random.nextInt(1000))
+                            .append(",").append("x".repeat(random.nextInt(120))).append('\n');
+            }
+        }
+        sb.append("last line without newline");
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+        List<Long> starts = recordStarts(data);
+
+        LineIndex index = LineIndex.scan(write(data));
+        assertEquals(starts.size(), index.records());
+
+        for (long record : new long[] { 0, 1, LineIndex.STRIDE - 1, LineIndex.STRIDE, 3 * LineIndex.STRIDE + 17,
+                starts.size() - 1, starts.size() + 100 }) {
+            long floor = index.floorRecord(record);
+            assertTrue(floor <= Math.max(0, record) && floor % LineIndex.STRIDE == 0, "floor of " + record);
+            assertTrue(floor < starts.size());
+            assertEquals((long) starts.get((int) floor), index.offsetOf(floor), "offset of record " + floor);
+        }
+
+        long[] points = index.splitPoints(8);
+        assertEquals(7, points.length);
+        long previous = 0;
+        for (long point : points) {
+            assertTrue(point > previous && point < data.length);
+            byte before = data[(int) point - 1];
+            assertTrue(before == '\n' || before == '\r', "split point " + point + " is not at a line start");
+            previous = point;
+        }
+    }
+
+    @Test
+    void bareCarriageReturnsEndRecordsLikeReadLine() throws IOException {
+        // Classic Mac line endings mixed with LF and CRLF, and a CR right before a buffer refill
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 9 * 1024 * 1024; i++) {
+            sb.append(i).append(",cr").append(i % 3 == 0 ? "\r\r" : i % 3 == 1 ? "\r" : "\r\n");
+        }
+        sb.append("tail");
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(sb.toString()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        List<Long> starts = recordStarts(data);
+        assertEquals(lines.size(), starts.size());
+
+        LineIndex index = LineIndex.scan(write(data));
+        assertEquals(lines.size(), index.records());
+        for (long record : new long[] { LineIndex.STRIDE, 100 * LineIndex.STRIDE, lines.size() - 1 }) {
+            long floor = index.floorRecord(record);
+            long offset = index.offsetOf(floor);
+            assertEquals((long) starts.get((int) floor), offset);
+            // Seeking there and reading on gives the same record the sequential reader reaches
+            try (BufferedReader reader = new BufferedReader(new StringReader(
+                    new String(data, (int) offset, data.length - (int) offset, StandardCharsets.UTF_8)))) {
+                assertEquals(lines.get((int) floor), reader.readLine());
+            }
+        }
+    }
+
+    @Test
+    void smallAndEmptyFiles() throws IOException {
+        LineIndex empty = LineIndex.scan(write(new byte[0]));
+        assertEquals(0, empty.records());
+        assertEquals(0, empty.offsetOf(empty.floorRecord(10)));
+        assertEquals(0, empty.splitPoints(4).length);
+
+        LineIndex small = LineIndex.scan(write("\n\n  \na,b\nc,d".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, small.records());
+        assertEquals(0, small.floorRecord(1));
+        assertEquals(5, small.offsetOf(0)); // The first record's line, after the blank ones
+        assertArrayEquals(new long[] { 5 }, small.splitPoints(4)); // One indexed record to cut at
+    }
+}
@@ -0,0 +1,112 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RangeFileProcessorTest {
+
+    @TempDir
+    Path dir;
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void stopWorkers() {
+        workers.shutdownNow();
+    }
+
+    // Non-blank lines as BufferedReader.readLine splits them
+    private static List<String> records(String text) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    // Copies every line unchanged
+    private List<String> process(String text, int workerCount, boolean skipHeader, long[] lineCount)
+            throws Exception {
+        File input = dir.resolve("input.csv").toFile();
+        File output = dir.resolve("output.csv").toFile();
+        Files.write(input.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        RangeFileProcessor processor = new RangeFileProcessor(workers, workerCount, 100, false,
+                (lines, segment) -> {
+                    lines.writeTo(segment, new byte[0]);
+                    return 0;
+                });
+        lineCount[0] = processor.process(input, output, skipHeader, null);
+        return records(new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void copiesEveryRecordAcrossWindowBoundaries() throws Exception {
+        // Several 1 MB windows per range, with blank, CR-only, CRLF, non-ASCII and window-sized lines
+        Random random = new Random(11);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 6 * 1024 * 1024) {
+            switch (random.nextInt(10)) {
+                case 0:
+                    sb.append('\n');
+                    break;
+                case 1:
+                    sb.append(" \t\r\n");
+                    break;
+                case 2:
+                    sb.append("x,암호화,").append(random.nextInt()).append("\r\n");
+                    break;
+                case 3:
+                    sb.append("cr,").append(random.nextInt()).append('\r');
+                    break;
+                case 4:
+                    if (random.nextInt(50) == 0) {
+                        char[] filler = new char[1024 * 1024 + random.nextInt(1024 * 1024)];
+                        Arrays.fill(filler, 'w');
+                        sb.append(filler).append('\n');
+                    }
+                    break;
+                default:
+                    sb.append("row,").append(random.nextInt(1000000)).append(",value\n");
+            }
+        }
+        sb.append("last line without a break");
+        String text = sb.toString();
+        List<String> expected = records(text);
+
+        for (int workerCount : new int[] { 1, 4 }) {
+            long[] lineCount = new long[1];
+            assertEquals(expected, process(text, workerCount, false, lineCount));
+            assertEquals(expected.size(), lineCount[0]);
+        }
+    }
+
+    @Test
+    void headerIsWrittenAsIsAndCounted() throws Exception {
+        String text = "\n  \nname,card\r\na,1\rb,2\n\n";
+        long[] lineCount = new long[1];
+        assertEquals(Arrays.asList("name,card", "a,1", "b,2"), process(text, 2, true, lineCount));
+        assertEquals(3, lineCount[0]);
+    }
+}
@@ -0,0 +1,125 @@
+package com.cadp.web.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueCacheTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ValueCache.Key key(String value) {
+        return new ValueCache.Key("policy", 1, bytes(value));
+    }
+
+    // The arrays the cache holds: every stored input followed by its result
+    @SuppressWarnings("unchecked")
+    private static List<byte[]> stored(ValueCache cache) {
+        Map<ValueCache.Key, byte[]> entries = (LinkedHashMap<ValueCache.Key, byte[]>) ReflectionTestUtils
+                .getField(cache, "entries");
+        List<byte[]> arrays = new ArrayList<>();
+        for (Map.Entry<ValueCache.Key, byte[]> entry : entries.entrySet()) {
+            arrays.add((byte[]) ReflectionTestUtils.getField(entry.getKey(), "value"));
+            arrays.add(entry.getValue());
+        }
+        return arrays;
+    }
+
+    private static boolean isZero(byte[] array) {
+        for (byte b : array) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntryAndZeroesIt() {
+        ValueCache cache = new ValueCache(3);
+        cache.put(key("a"), bytes("A"));
+        cache.put(key("b"), bytes("B"));
+        cache.put(key("c"), bytes("C"));
+        assertArrayEquals(bytes("A"), cache.get(key("a")));
+        List<byte[]> beforeEviction = stored(cache); // b, c, a in access order
+
+        cache.put(key("d"), bytes("D"));
+
+        assertNull(cache.get(key("b")));
+        assertArrayEquals(bytes("A"), cache.get(key("a")));
+        assertArrayEquals(bytes("C"), cache.get(key("c")));
+        assertArrayEquals(bytes("D"), cache.get(key("d")));
+        assertEquals(6, stored(cache).size());
+        assertTrue(isZero(beforeEviction.get(0)), "evicted input left in memory");
+        assertTrue(isZero(beforeEviction.get(1)), "evicted result left in memory");
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void keysDifferByPolicyAndColumn() {
+        ValueCache cache = new ValueCache(10);
+        cache.put(new ValueCache.Key("policy", 1, bytes("KR")), bytes("x"));
+
+        assertNull(cache.get(new ValueCache.Key("other", 1, bytes("KR"))));
+        assertNull(cache.get(new ValueCache.Key("policy", 2, bytes("KR"))));
+        assertArrayEquals(bytes("x"), cache.get(new ValueCache.Key("policy", 1, bytes("KR"))));
+    }
+
+    @Test
+    void wipeZeroesTheCachedCopiesButNotTheCallersArrays() {
+        ValueCache cache = new ValueCache(10);
+        byte[] input = bytes("900101-1234567");
+        byte[] result = bytes("protected");
+        cache.put(new ValueCache.Key("policy", 1, input), result);
+        cache.put(key("b"), bytes("B"));
+        byte[] served = cache.get(new ValueCache.Key("policy", 1, input));
+        List<byte[]> copies = stored(cache);
+
+        cache.wipe();
+
+        assertEquals(4, copies.size());
+        for (byte[] copy : copies) {
+            assertTrue(isZero(copy), "cached copy left in memory");
+        }
+        assertTrue(stored(cache).isEmpty());
+        assertNull(cache.get(key("b")));
+        assertArrayEquals(bytes("900101-1234567"), input);
+        assertArrayEquals(bytes("protected"), result);
+        assertArrayEquals(bytes("protected"), served);
+    }
+
+    @Test
+    void aRepeatedPutKeepsOneCopyAndZeroesTheOther() {
+        ValueCache cache = new ValueCache(10);
+        cache.put(key("a"), bytes("first"));
+        byte[] firstResult = stored(cache).get(1);
+
+        cache.put(key("a"), bytes("second"));
+
+        assertTrue(isZero(firstResult));
+        assertEquals(2, stored(cache).size());
+        assertArrayEquals(bytes("second"), cache.get(key("a")));
+    }
+
+    @Test
+    void onlyProtectWithANonDeterministicPolicyIsNotCacheable() {
+        assertTrue(ValueCache.isCacheable(false, false));
+        assertTrue(ValueCache.isCacheable(false, true));
+        assertTrue(ValueCache.isCacheable(true, true));
+        assertFalse(ValueCache.isCacheable(true, false));
+    }
+}